@@ -6,6 +6,12 @@ import jade.core.Runtime;
 import jade.wrapper.AgentContainer;
 import jade.wrapper.AgentController;
 import underfried.ui.GameWindow;
+import underfried.ui.RenderBenchmark;
+import underfried.ui.TravelBenchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.swing.SwingUtilities;
 
 public class App {
@@ -13,64 +19,225 @@ public class App {
 
     /**
      * Main method to launch JADE platform with it's agents and UI
+     * 
+     * Supported arguments:
+     * --clock=real|scaled:N|virtual|virtual:N (default: real)
+     * --headless run the agents against the Restaurant only, without Swing
+     * --duration=SECONDS stop after this much simulated time (default: run
+     * forever)
+     * --chefs=N number of Chef agents sharing the kitchen work (default: 1)
+     * --preparers=N number of DishPreparer agents sharing the plating spots
+     * (default: 1)
+     * --washers=N number of DishWasher agents sharing the dirty plates
+     * (default: 1)
+     * --runners=N number of Runner agents carrying ready dishes to the tables
+     * (default: 1)
+     * --scheduler=fifo|spt|edf|weighted-age order in which chefs pick up
+     * queued orders (default: fifo)
+     * --fps=N frame rate of the UI's game loop, e.g. low to check that agents
+     * don't slow down with it (default: 60)
+     * --render-benchmark=FRAMES measure the time and allocations of painting
+     * the game window offscreen instead of running the simulation
+     * --travel-benchmark=WALKS measure how long sprite walks take at 60, 20 and
+     * 5 fps instead of running the simulation
      */
     public static void main(String[] args) {
-        Restaurant restaurant = new Restaurant();
+        SimulationClock clock = SimulationClock.parse(getOption(args, "clock", "real"));
+        boolean headless = hasFlag(args, "headless");
+        long durationSeconds = Long.parseLong(getOption(args, "duration", "0"));
+        int chefCount = Math.max(1, Integer.parseInt(getOption(args, "chefs", "1")));
+        int preparerCount = Math.max(1, Integer.parseInt(getOption(args, "preparers", "1")));
+        int washerCount = Math.max(1, Integer.parseInt(getOption(args, "washers", "1")));
+        int runnerCount = Math.max(1, Integer.parseInt(getOption(args, "runners", "1")));
+        int framesPerSecond = Math.max(1, Math.min(1000, Integer.parseInt(getOption(args, "fps", "60"))));
 
-        // Initialize the game UI on the Swing Event Dispatch Thread
-        gameWindow = new GameWindow(restaurant);
-        SwingUtilities.invokeLater(() -> {
-            // Set the IO class to use this game window for logging
-            IO.setGameWindow(gameWindow);
-            gameWindow.appendLog("Restaurant opened!");
-            gameWindow.appendLog("Initializing JADE agents...");
-        });
+        Restaurant restaurant = new Restaurant(clock);
+        restaurant.getKitchenTasks().setScheduler(OrderScheduler.parse(getOption(args, "scheduler", "fifo")));
+        IO.println("System", "Simulation clock: " + clock.describe() + (headless ? " (headless)" : ""));
+
+        int benchmarkFrames = Integer.parseInt(getOption(args, "render-benchmark", "0"));
+        if (benchmarkFrames > 0) {
+            RenderBenchmark.run(restaurant, benchmarkFrames);
+            System.exit(0);
+        }
+        int benchmarkWalks = Integer.parseInt(getOption(args, "travel-benchmark", "0"));
+        if (benchmarkWalks > 0) {
+            TravelBenchmark.run(restaurant, benchmarkWalks);
+            System.exit(0);
+        }
+
+        // Keep virtual time still until every agent is up and running
+        clock.holdTime();
+
+        if (!headless) {
+            // Initialize the game UI on the Swing Event Dispatch Thread
+            gameWindow = new GameWindow(restaurant, framesPerSecond);
+            SwingUtilities.invokeLater(() -> {
+                // Set the IO class to use this game window for logging
+                IO.setGameWindow(gameWindow);
+            });
+        }
+        log("Restaurant opened!");
+        log("Initializing JADE agents...");
 
         // Start JADE runtime
         Runtime rt = Runtime.instance();
         Profile p = new ProfileImpl();
-        p.setParameter(Profile.GUI, "true");
+        p.setParameter(Profile.GUI, String.valueOf(!headless));
         AgentContainer ac = rt.createMainContainer(p);
 
         // Create agents with their necessary arguments
         try {
-            Object[] agentArgs = new Object[] { restaurant, gameWindow };
+            Object[] agentArgs = headless ? new Object[] { restaurant } : new Object[] { restaurant, gameWindow };
 
-            AgentController chef = ac.createNewAgent("chef", "underfried.agents.Chef", agentArgs);
+            // The first chef keeps the plain "chef" name, extra chefs are numbered
+            List<AgentController> chefs = new ArrayList<>();
+            for (int i = 1; i <= chefCount; i++) {
+                String chefName = i == 1 ? "chef" : "chef" + i;
+                restaurant.registerStaff(Restaurant.StaffRole.CHEF, chefName);
+                chefs.add(ac.createNewAgent(chefName, "underfried.agents.Chef", agentArgs));
+            }
+            List<AgentController> preparers = new ArrayList<>();
+            for (int i = 1; i <= preparerCount; i++) {
+                String preparerName = i == 1 ? "dishPreparer" : "dishPreparer" + i;
+                restaurant.registerStaff(Restaurant.StaffRole.DISH_PREPARER, preparerName);
+                preparers.add(ac.createNewAgent(preparerName, "underfried.agents.DishPreparer", agentArgs));
+            }
+            List<AgentController> washers = new ArrayList<>();
+            for (int i = 1; i <= washerCount; i++) {
+                String washerName = i == 1 ? "dishWasher" : "dishWasher" + i;
+                restaurant.registerStaff(Restaurant.StaffRole.DISH_WASHER, washerName);
+                washers.add(ac.createNewAgent(washerName, "underfried.agents.DishWasher", agentArgs));
+            }
             AgentController waiter = ac.createNewAgent("waiter", "underfried.agents.Waiter", agentArgs);
-            AgentController dishPreparer = ac.createNewAgent("dishPreparer", "underfried.agents.DishPreparer",
-                    agentArgs);
-            AgentController dishWasher = ac.createNewAgent("dishWasher", "underfried.agents.DishWasher", agentArgs);
+            restaurant.registerStaff(Restaurant.StaffRole.WAITER, "waiter");
+            List<AgentController> runners = new ArrayList<>();
+            for (int i = 1; i <= runnerCount; i++) {
+                String runnerName = i == 1 ? "runner" : "runner" + i;
+                restaurant.registerStaff(Restaurant.StaffRole.RUNNER, runnerName);
+                runners.add(ac.createNewAgent(runnerName, "underfried.agents.Runner", agentArgs));
+            }
 
-            chef.start();
+            for (AgentController chef : chefs) {
+                chef.start();
+            }
             waiter.start();
-            dishPreparer.start();
-            dishWasher.start();
+            for (AgentController runner : runners) {
+                runner.start();
+            }
+            for (AgentController preparer : preparers) {
+                preparer.start();
+            }
+            for (AgentController washer : washers) {
+                washer.start();
+            }
 
-            SwingUtilities.invokeLater(() -> {
-                gameWindow.appendLog("All agents started successfully!");
-                gameWindow.appendLog("Chef agent is ready to cook.");
-                gameWindow.appendLog("Waiter agent is ready to serve.");
-                gameWindow.appendLog("DishPreparer agent is ready to assemble dishes.");
-                gameWindow.appendLog("DishWasher agent is ready to clean plates.");
-                gameWindow.appendLog("\n--- Simulation Running ---\n");
-            });
+            log("All agents started successfully!");
+            log(chefCount == 1 ? "Chef agent is ready to cook." : chefCount + " Chef agents are ready to cook.");
+            log("Waiter agent is ready to take orders.");
+            log(runnerCount == 1 ? "Runner agent is ready to serve."
+                    : runnerCount + " Runner agents are ready to serve.");
+            log(preparerCount == 1 ? "DishPreparer agent is ready to assemble dishes."
+                    : preparerCount + " DishPreparer agents are ready to assemble dishes.");
+            log(washerCount == 1 ? "DishWasher agent is ready to clean plates."
+                    : washerCount + " DishWasher agents are ready to clean plates.");
+            log("\n--- Simulation Running ---\n");
+
+            if (headless) {
+                // Without the UI game loop, hazards are spawned by their own thread
+                new HazardSpawner(restaurant).startHeadless();
+            }
 
         } catch (Exception e) {
             e.printStackTrace();
-            if (gameWindow != null) {
-                SwingUtilities.invokeLater(() -> {
-                    gameWindow.appendLog("ERROR: Failed to start agents - " + e.getMessage());
-                });
-            }
+            log("ERROR: Failed to start agents - " + e.getMessage());
         }
 
+        clock.releaseTime();
+
         // Add shutdown hook to clean up UI
         java.lang.Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             if (gameWindow != null) {
                 gameWindow.cleanup();
             }
         }));
+
+        if (durationSeconds > 0) {
+            // Wait one simulated second at a time: a single long sleep would be the
+            // wake-up a virtual clock jumps to whenever every agent is briefly busy
+            // outside of the clock (e.g. blocked on a lock)
+            long end = clock.now() + durationSeconds * 1000;
+            while (clock.now() < end && !Thread.currentThread().isInterrupted()) {
+                clock.pause(Math.min(1000, end - clock.now()));
+            }
+            printSummary(restaurant, durationSeconds);
+            rt.shutDown();
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Print the state of the restaurant at the end of a timed run
+     */
+    private static void printSummary(Restaurant restaurant, long durationSeconds) {
+        IO.println("System", "=== Simulation finished after " + durationSeconds + " simulated seconds ===");
+        IO.println("System", "Pending orders: " + restaurant.getPendingOrderCount());
+        IO.println("System", "Ready dishes: " + restaurant.getReadyDishCount());
+        IO.println("System", "Plates: " + restaurant.getPlates().getSummary());
+        IO.println("System", "Plate count conserved: " + restaurant.getPlates().isConserved());
+        IO.println("System", "Plate wait: " + restaurant.getPlateWait().getSummary());
+        IO.println("System", "Tickets: " + restaurant.getTickets().getSummary());
+        IO.println("System", "Kitchen tasks: " + restaurant.getKitchenTasks().getSummary());
+        for (StationResource station : restaurant.getStations()) {
+            IO.println("System", "Station - " + station.getSummary());
+        }
+        for (Restaurant.EnvironmentalCondition type : Restaurant.EnvironmentalCondition.values()) {
+            IO.println("System", "Hazards - " + restaurant.getHazards().getSummary(type));
+        }
+        for (MailboxStats mailbox : restaurant.getMailboxStats()) {
+            IO.println("System", "Mailbox - " + mailbox.getSummary());
+        }
+    }
+
+    /**
+     * Log a startup message to the UI log, or to the console when headless
+     */
+    private static void log(String message) {
+        if (gameWindow != null) {
+            SwingUtilities.invokeLater(() -> gameWindow.appendLog(message));
+        } else {
+            IO.println("System", message);
+        }
+    }
+
+    /**
+     * Read a "--name=value" command line option
+     * 
+     * @param args         command line arguments
+     * @param name         option name without the leading dashes
+     * @param defaultValue value returned when the option is absent
+     * @return the option value or the default
+     */
+    private static String getOption(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Check for a "--name" command line flag
+     */
+    private static boolean hasFlag(String[] args, String name) {
+        for (String arg : args) {
+            if (arg.equals("--" + name)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public static GameWindow getGameWindow() {
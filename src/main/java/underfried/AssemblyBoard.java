@@ -0,0 +1,46 @@
+package underfried;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The ingredients delivered so far for every order that is still missing some,
+ * shared by all DishPreparer agents.
+ *
+ * Chefs may deliver the ingredients of one order to different preparers, so
+ * no preparer owns an order. Each delivery ORs the ingredient's bit into the
+ * order's mask (see RecipeMasks). The delivery that completes the mask removes
+ * the order from the board in the same atomic step, so exactly one preparer
+ * sees it complete and hands the dish on to plating.
+ */
+public class AssemblyBoard {
+    // Key: ticket ID, Value: mask of the ingredients delivered for that order
+    private final Map<Long, Long> delivered = new ConcurrentHashMap<>();
+
+    /**
+     * Record a delivered ingredient
+     *
+     * @param ticketId      the order the ingredient is for
+     * @param recipe        mask of the order's recipe
+     * @param ingredientBit bit of the delivered ingredient
+     * @return mask of the ingredients the order is still missing. 0 means this
+     *         delivery completed the order, which is returned to exactly one
+     *         caller
+     */
+    public long deliver(long ticketId, long recipe, long ingredientBit) {
+        long[] missing = new long[1];
+        delivered.compute(ticketId, (id, mask) -> {
+            long now = (mask == null ? 0 : mask) | ingredientBit;
+            missing[0] = recipe & ~now;
+            return RecipeMasks.isComplete(now, recipe) ? null : now;
+        });
+        return missing[0];
+    }
+
+    /**
+     * @return number of orders with some but not all ingredients delivered
+     */
+    public int getInProgressCount() {
+        return delivered.size();
+    }
+}
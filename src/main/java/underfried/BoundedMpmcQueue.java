@@ -0,0 +1,128 @@
+package underfried;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer multi-consumer queue used for the order
+ * pipeline shared between agents and the UI.
+ *
+ * It is a ring buffer where every slot carries a sequence number telling
+ * producers and consumers whether the slot is free or holds a published item
+ * for the current lap, so offer and poll only need one CAS each and never
+ * allocate. Nothing blocks: agents are woken by the restaurant when an item
+ * arrives and then poll.
+ *
+ * @param <E> type of the queued items
+ */
+public class BoundedMpmcQueue<E> {
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong(); // Next position to consume
+    private final AtomicLong tail = new AtomicLong(); // Next position to produce
+
+    /**
+     * Create a queue
+     *
+     * @param capacity maximum number of items, rounded up to a power of two
+     */
+    public BoundedMpmcQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + capacity);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = this.capacity - 1;
+        this.items = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add an item without blocking
+     *
+     * @param item the item to add
+     * @return true if added, false if the queue is full
+     */
+    public boolean offer(E item) {
+        Objects.requireNonNull(item, "item");
+
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                // Slot is free for this lap, try to claim it
+                if (tail.compareAndSet(position, position + 1)) {
+                    items.set(index, item);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // Slot still holds an item from the previous lap
+                return false;
+            } else {
+                // Another producer claimed this position first
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Remove the next item without blocking
+     *
+     * @return the next item, or null if the queue is empty
+     */
+    public E poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E item = items.get(index);
+                    items.set(index, null);
+                    sequences.set(index, position + capacity);
+                    return item;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                // Empty, or the producer of this slot has not published it yet
+                return null;
+            } else {
+                // Another consumer took this position first
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Get the number of queued items in O(1)
+     *
+     * @return current size, a snapshot while producers/consumers are active
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,168 @@
+package underfried;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import underfried.Restaurant.ActiveCondition;
+import underfried.Restaurant.EnvironmentalCondition;
+
+/**
+ * Thread-safe spatial index of the active environmental conditions.
+ *
+ * Conditions are bucketed by type and by the tile they are on. Each bucket is
+ * an immutable array replaced with a CAS on every change (conditions come and
+ * go rarely, but are queried every agent cycle and every rendered frame), so
+ * lookups never lock or allocate. Live counts per type are kept alongside so
+ * that counting is O(1).
+ */
+public class ConditionIndex {
+    private static final ActiveCondition[] EMPTY = new ActiveCondition[0];
+    private static final int TYPES = EnvironmentalCondition.values().length;
+
+    private final int width, height; // Grid size in tiles
+    private final AtomicReferenceArray<ActiveCondition[]> buckets;
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(TYPES);
+
+    /**
+     * Create an index for a grid of tiles. Positions outside the grid are
+     * clamped to the nearest edge tile.
+     *
+     * @param width  grid width in tiles
+     * @param height grid height in tiles
+     */
+    public ConditionIndex(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.buckets = new AtomicReferenceArray<>(TYPES * width * height);
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, EMPTY);
+        }
+    }
+
+    /**
+     * Add a condition to the index
+     */
+    public void add(ActiveCondition condition) {
+        int bucket = bucketOf(condition.type, tileX(condition.x), tileY(condition.y));
+        ActiveCondition[] current, next;
+        do {
+            current = buckets.get(bucket);
+            next = new ActiveCondition[current.length + 1];
+            System.arraycopy(current, 0, next, 0, current.length);
+            next[current.length] = condition;
+        } while (!buckets.compareAndSet(bucket, current, next));
+        counts.incrementAndGet(condition.type.ordinal());
+    }
+
+    /**
+     * Remove a condition from the index
+     *
+     * @return true if it was removed, false if it was not (or no longer) indexed
+     */
+    public boolean remove(ActiveCondition condition) {
+        int bucket = bucketOf(condition.type, tileX(condition.x), tileY(condition.y));
+        ActiveCondition[] current, next;
+        do {
+            current = buckets.get(bucket);
+            int index = indexOf(current, condition);
+            if (index < 0) {
+                return false;
+            }
+            next = new ActiveCondition[current.length - 1];
+            System.arraycopy(current, 0, next, 0, index);
+            System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+        } while (!buckets.compareAndSet(bucket, current, next));
+        counts.decrementAndGet(condition.type.ordinal());
+        return true;
+    }
+
+    /**
+     * Get the number of active conditions of a type in O(1)
+     */
+    public int count(EnvironmentalCondition type) {
+        return counts.get(type.ordinal());
+    }
+
+    /**
+     * Find an active condition of a type whose position is within range of a
+     * point on both axes (|dx| < range and |dy| < range)
+     *
+     * @return a matching condition, or null if there is none
+     */
+    public ActiveCondition findWithin(EnvironmentalCondition type, double x, double y, double range) {
+        if (count(type) == 0) {
+            return null;
+        }
+
+        int minX = tileX(x - range), maxX = tileX(x + range);
+        int minY = tileY(y - range), maxY = tileY(y + range);
+        for (int tileY = minY; tileY <= maxY; tileY++) {
+            for (int tileX = minX; tileX <= maxX; tileX++) {
+                for (ActiveCondition condition : buckets.get(bucketOf(type, tileX, tileY))) {
+                    if (!condition.resolved &&
+                            Math.abs(condition.x - x) < range &&
+                            Math.abs(condition.y - y) < range) {
+                        return condition;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find any active condition of a type
+     *
+     * @return a condition, or null if there is none
+     */
+    public ActiveCondition findAny(EnvironmentalCondition type) {
+        if (count(type) == 0) {
+            return null;
+        }
+
+        int start = bucketOf(type, 0, 0);
+        for (int bucket = start; bucket < start + width * height; bucket++) {
+            for (ActiveCondition condition : buckets.get(bucket)) {
+                if (!condition.resolved) {
+                    return condition;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Visit every active condition of every type
+     */
+    public void forEach(Consumer<ActiveCondition> action) {
+        for (int bucket = 0; bucket < buckets.length(); bucket++) {
+            for (ActiveCondition condition : buckets.get(bucket)) {
+                if (!condition.resolved) {
+                    action.accept(condition);
+                }
+            }
+        }
+    }
+
+    private int bucketOf(EnvironmentalCondition type, int tileX, int tileY) {
+        return (type.ordinal() * height + tileY) * width + tileX;
+    }
+
+    private int tileX(double x) {
+        return Math.max(0, Math.min(width - 1, (int) Math.floor(x)));
+    }
+
+    private int tileY(double y) {
+        return Math.max(0, Math.min(height - 1, (int) Math.floor(y)));
+    }
+
+    private static int indexOf(ActiveCondition[] conditions, ActiveCondition condition) {
+        for (int i = 0; i < conditions.length; i++) {
+            if (conditions[i] == condition) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
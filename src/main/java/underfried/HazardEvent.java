@@ -0,0 +1,36 @@
+package underfried;
+
+import underfried.Restaurant.ActiveCondition;
+
+/**
+ * Event published on the HazardEventBus whenever an environmental condition
+ * appears or is resolved
+ */
+public class HazardEvent {
+    public enum Kind {
+        REPORTED,
+        RESOLVED
+    }
+
+    private final Kind kind;
+    private final ActiveCondition condition;
+    private final long time; // Simulated ms when the event happened
+
+    public HazardEvent(Kind kind, ActiveCondition condition, long time) {
+        this.kind = kind;
+        this.condition = condition;
+        this.time = time;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public ActiveCondition getCondition() {
+        return condition;
+    }
+
+    public long getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,141 @@
+package underfried;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import underfried.Restaurant.ActiveCondition;
+import underfried.Restaurant.EnvironmentalCondition;
+
+/**
+ * HazardEventBus pushes fire, rat and burned food events to the agents that
+ * subscribed to them, so nobody has to poll the restaurant for hazards.
+ *
+ * It also measures, per hazard type, how long it took from the moment a
+ * hazard was reported until an agent started dealing with it (response time)
+ * and until it was gone (resolution time).
+ */
+public class HazardEventBus {
+    private static final int TYPES = EnvironmentalCondition.values().length;
+
+    private final SimulationClock clock;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    // Per-type metrics, indexed by EnvironmentalCondition ordinal
+    private final AtomicLongArray reported = new AtomicLongArray(TYPES);
+    private final AtomicLongArray responded = new AtomicLongArray(TYPES);
+    private final AtomicLongArray totalResponse = new AtomicLongArray(TYPES);
+    private final AtomicLongArray maxResponse = new AtomicLongArray(TYPES);
+    private final AtomicLongArray resolved = new AtomicLongArray(TYPES);
+    private final AtomicLongArray totalResolution = new AtomicLongArray(TYPES);
+    private final AtomicLongArray maxResolution = new AtomicLongArray(TYPES);
+
+    private static class Subscription {
+        final EnvironmentalCondition type;
+        final HazardListener listener;
+
+        Subscription(EnvironmentalCondition type, HazardListener listener) {
+            this.type = type;
+            this.listener = listener;
+        }
+    }
+
+    public HazardEventBus(SimulationClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Subscribe to events for one type of hazard
+     *
+     * @param type     the hazard type to listen for
+     * @param listener called for every REPORTED and RESOLVED event of that type
+     */
+    public void subscribe(EnvironmentalCondition type, HazardListener listener) {
+        subscriptions.add(new Subscription(type, listener));
+    }
+
+    /**
+     * Publish that a new hazard appeared
+     */
+    public void reported(ActiveCondition condition) {
+        reported.incrementAndGet(condition.type.ordinal());
+        publish(new HazardEvent(HazardEvent.Kind.REPORTED, condition, condition.reportedAt));
+    }
+
+    /**
+     * Record that an agent started dealing with a hazard
+     *
+     * @return true if the caller is the first responder, false if another agent
+     *         already claimed it or it is already resolved
+     */
+    public boolean respond(ActiveCondition condition) {
+        if (condition.resolved || !condition.claim()) {
+            return false;
+        }
+        long latency = clock.now() - condition.reportedAt;
+        int type = condition.type.ordinal();
+        responded.incrementAndGet(type);
+        totalResponse.addAndGet(type, latency);
+        maxResponse.accumulateAndGet(type, latency, Math::max);
+        return true;
+    }
+
+    /**
+     * Publish that a hazard is gone
+     */
+    public void resolved(ActiveCondition condition) {
+        long now = clock.now();
+        long latency = now - condition.reportedAt;
+        int type = condition.type.ordinal();
+        resolved.incrementAndGet(type);
+        totalResolution.addAndGet(type, latency);
+        maxResolution.accumulateAndGet(type, latency, Math::max);
+        publish(new HazardEvent(HazardEvent.Kind.RESOLVED, condition, now));
+    }
+
+    private void publish(HazardEvent event) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.type == event.getCondition().type) {
+                subscription.listener.onHazard(event);
+            }
+        }
+    }
+
+    /**
+     * @return average time from report to first response in simulated ms
+     */
+    public long getAverageResponseMillis(EnvironmentalCondition type) {
+        long count = responded.get(type.ordinal());
+        return count == 0 ? 0 : totalResponse.get(type.ordinal()) / count;
+    }
+
+    public long getMaxResponseMillis(EnvironmentalCondition type) {
+        return maxResponse.get(type.ordinal());
+    }
+
+    /**
+     * @return average time from report to resolution in simulated ms
+     */
+    public long getAverageResolutionMillis(EnvironmentalCondition type) {
+        long count = resolved.get(type.ordinal());
+        return count == 0 ? 0 : totalResolution.get(type.ordinal()) / count;
+    }
+
+    public long getMaxResolutionMillis(EnvironmentalCondition type) {
+        return maxResolution.get(type.ordinal());
+    }
+
+    /**
+     * Get a one-line summary of the response metrics for a hazard type
+     */
+    public String getSummary(EnvironmentalCondition type) {
+        int index = type.ordinal();
+        return type.getDisplayName() + ": reported " + reported.get(index) +
+                ", responded " + responded.get(index) +
+                " (avg " + getAverageResponseMillis(type) / 1000.0 + "s, max " +
+                getMaxResponseMillis(type) / 1000.0 + "s)" +
+                ", resolved " + resolved.get(index) +
+                " (avg " + getAverageResolutionMillis(type) / 1000.0 + "s, max " +
+                getMaxResolutionMillis(type) / 1000.0 + "s)";
+    }
+}
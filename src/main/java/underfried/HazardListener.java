@@ -0,0 +1,11 @@
+package underfried;
+
+/**
+ * Receives hazard events from the HazardEventBus.
+ * Listeners run on the publisher's thread (an agent or the game loop), so they
+ * should only hand the event over to their owner, never do the work inline.
+ */
+@FunctionalInterface
+public interface HazardListener {
+    void onHazard(HazardEvent event);
+}
@@ -0,0 +1,98 @@
+package underfried;
+
+import java.util.Random;
+
+/**
+ * HazardSpawner periodically rolls for new fires in the kitchen and rats in
+ * the dining area. It is driven either by the UI's simulation loop
+ * (GameState) or, in headless mode, by its own thread sleeping on the
+ * simulation clock.
+ */
+public class HazardSpawner {
+    private static final long FIRE_CHECK_INTERVAL = 8000; // Simulated ms between fire checks
+    private static final long RAT_CHECK_INTERVAL = 15000; // Simulated ms between rat checks
+    private static final double FIRE_PROBABILITY = 0.15; // 15% chance
+    private static final double RAT_PROBABILITY = 0.20; // 20% chance
+
+    private final Restaurant restaurant;
+    private final Random random;
+    private long lastFireCheck;
+    private long lastRatCheck;
+
+    public HazardSpawner(Restaurant restaurant) {
+        this.restaurant = restaurant;
+        this.random = new Random();
+        this.lastFireCheck = restaurant.getClock().now();
+        this.lastRatCheck = restaurant.getClock().now();
+    }
+
+    /**
+     * Check whether any spawn interval has elapsed and roll for new hazards
+     */
+    public void update() {
+        long currentTime = restaurant.getClock().now();
+
+        // Check for fire spawning
+        if (currentTime - lastFireCheck > FIRE_CHECK_INTERVAL) {
+            lastFireCheck = currentTime;
+            if (random.nextDouble() < FIRE_PROBABILITY) {
+                spawnFire();
+            }
+        }
+
+        // Check for rat spawning
+        if (currentTime - lastRatCheck > RAT_CHECK_INTERVAL) {
+            lastRatCheck = currentTime;
+            if (random.nextDouble() < RAT_PROBABILITY) {
+                spawnRat();
+            }
+        }
+    }
+
+    /**
+     * Run the spawner on its own daemon thread (used when there is no UI loop)
+     */
+    public void startHeadless() {
+        SimulationClock clock = restaurant.getClock();
+        // Hold virtual time until the thread is running, so it cannot jump
+        // past the first checks before the spawner goes to sleep on the clock
+        clock.holdTime();
+        Thread thread = new Thread(() -> {
+            update();
+            clock.releaseTime();
+            while (!Thread.currentThread().isInterrupted()) {
+                clock.pause(1000);
+                update();
+            }
+        }, "hazard-spawner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Spawn a fire at a random cooking station
+     */
+    private void spawnFire() {
+        // Fire can spawn at cooking or cutting stations
+        KitchenStation[] fireLocations = { KitchenStation.COOKING, KitchenStation.CUTTING };
+
+        KitchenStation location = fireLocations[random.nextInt(fireLocations.length)];
+        double x = location.getX();
+        double y = location.getY();
+
+        restaurant.addCondition(Restaurant.EnvironmentalCondition.FIRE, x, y);
+        System.out.println("[HazardSpawner] Fire started at location (" + x + ", " + y + ")!");
+    }
+
+    /**
+     * Spawn a rat at a random location in the dining area
+     */
+    private void spawnRat() {
+        // Rat can spawn anywhere in the dining area (x: 10-20, y: 0-14)
+        double x = 10 + random.nextDouble() * 10;
+        double y = random.nextDouble() * 14;
+
+        restaurant.addCondition(Restaurant.EnvironmentalCondition.RAT, x, y);
+        System.out.println("[HazardSpawner] Rat appeared at location (" + x + ", " + y + ")!");
+    }
+}
@@ -0,0 +1,400 @@
+package underfried;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Work-stealing queue of ingredient tasks shared by the chefs.
+ *
+ * Every meal is split into one task per ingredient. The chef that received the
+ * order pushes the tasks onto its own deque and works through them from the
+ * front, while idle chefs steal from the back of the other chefs' deques. An
+ * owner and a thief only meet on the last remaining task, so the chefs hardly
+ * ever contend.
+ *
+ * With a scheduler other than FIFO, owners pick the most urgent task of their
+ * deque according to the OrderScheduler policy and thieves the least urgent.
+ */
+public class IngredientTaskQueue {
+    // Promised time of an order, as a multiple of its estimated cost
+    private static final int DEADLINE_FACTOR = 3;
+
+    /**
+     * One meal ordered by a customer, split into ingredient tasks
+     */
+    public static class Order {
+        public final long id; // Arrival sequence number
+        public final long ticketId; // Ticket of the order in the TicketTable
+        public final String mealName;
+        public final long createdAt; // Simulated ms when the order was split
+        public final long cost; // Estimated simulated ms of work and travel
+        public final long deadline; // Simulated ms the meal is promised for
+        private final AtomicInteger remaining = new AtomicInteger();
+
+        private Order(long id, long ticketId, String mealName, long createdAt, long cost) {
+            this.id = id;
+            this.ticketId = ticketId;
+            this.mealName = mealName;
+            this.createdAt = createdAt;
+            this.cost = cost;
+            this.deadline = createdAt + DEADLINE_FACTOR * cost;
+        }
+    }
+
+    /**
+     * Preparing (cutting and/or cooking) one ingredient of one meal
+     */
+    public static class Task {
+        public final Order order;
+        public final String mealName;
+        public final String ingredient;
+        public final long createdAt; // Simulated ms when the order was split
+
+        private Task(Order order, String ingredient) {
+            this.order = order;
+            this.mealName = order.mealName;
+            this.ingredient = ingredient;
+            this.createdAt = order.createdAt;
+        }
+
+        @Override
+        public String toString() {
+            return ingredient + " for " + mealName + " #" + order.ticketId;
+        }
+    }
+
+    private final Map<String, ConcurrentLinkedDeque<Task>> deques = new ConcurrentHashMap<>();
+    private final SimulationClock clock;
+    private final AtomicLong nextOrderId = new AtomicLong();
+    private volatile OrderScheduler scheduler = OrderScheduler.FIFO;
+
+    // Metrics
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong stolen = new AtomicLong();
+    private final AtomicLong batched = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong redone = new AtomicLong();
+    private final AtomicLong plans = new AtomicLong();
+    private final AtomicLong plannedTravel = new AtomicLong();
+    private final AtomicLong naiveTravel = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+    private final List<Long> orderLatencies = Collections.synchronizedList(new ArrayList<>());
+
+    public IngredientTaskQueue(SimulationClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Choose the policy used to pick the next task
+     */
+    public void setScheduler(OrderScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public OrderScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Give a chef its own deque. Chefs that never registered can still submit
+     * and take tasks, their deque is created on first use.
+     */
+    public void register(String chefName) {
+        dequeOf(chefName);
+    }
+
+    /**
+     * Split a meal into one task per ingredient and push them onto a chef's own
+     * deque
+     *
+     * @param chefName    the chef that received the order
+     * @param ticketId    the order's ticket ID
+     * @param mealName    the ordered meal
+     * @param ingredients the meal's ingredients, in the order they should be
+     *                    worked on
+     * @param cost        estimated simulated ms of work and travel for the meal
+     * @return the new order
+     */
+    public Order submit(String chefName, long ticketId, String mealName, List<String> ingredients, long cost) {
+        Order order = new Order(nextOrderId.getAndIncrement(), ticketId, mealName, clock.now(), cost);
+        order.remaining.set(ingredients.size());
+
+        ConcurrentLinkedDeque<Task> deque = dequeOf(chefName);
+        for (String ingredient : ingredients) {
+            deque.addLast(new Task(order, ingredient));
+        }
+        submitted.addAndGet(ingredients.size());
+        return order;
+    }
+
+    /**
+     * Get the next task for a chef: the most urgent task of its own deque, or
+     * else the least urgent task stolen from another chef, which that chef
+     * would get to last. With FIFO that is the oldest own task or the newest
+     * task of another chef.
+     *
+     * @return a task, or null if there is no work left anywhere
+     */
+    public Task next(String chefName) {
+        OrderScheduler policy = scheduler;
+        Comparator<Task> priority = policy == OrderScheduler.FIFO ? null : policy.priority(clock.now());
+
+        Task task = priority == null ? dequeOf(chefName).pollFirst() : pollMostUrgent(dequeOf(chefName), priority);
+        if (task != null) {
+            return task;
+        }
+
+        for (Map.Entry<String, ConcurrentLinkedDeque<Task>> victim : deques.entrySet()) {
+            if (victim.getKey().equals(chefName)) {
+                continue;
+            }
+            task = priority == null ? victim.getValue().pollLast()
+                    : pollMostUrgent(victim.getValue(), priority.reversed());
+            if (task != null) {
+                stolen.incrementAndGet();
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove the highest ranked task of a deque, retrying if another chef took
+     * it first
+     */
+    private static Task pollMostUrgent(ConcurrentLinkedDeque<Task> deque, Comparator<Task> priority) {
+        while (true) {
+            Task best = null;
+            for (Task task : deque) {
+                if (best == null || priority.compare(task, best) < 0) {
+                    best = task;
+                }
+            }
+            if (best == null || deque.removeFirstOccurrence(best)) {
+                return best;
+            }
+        }
+    }
+
+    /**
+     * Take more tasks from a chef's own deque that can be prepared together with
+     * one it is already working on, oldest first. Tasks stolen by another chef
+     * in the meantime are skipped.
+     *
+     * @param chefName the chef building the batch
+     * @param matches  which tasks can join the batch
+     * @param max      maximum number of tasks to take
+     * @return the tasks taken, possibly none
+     */
+    public List<Task> takeMatching(String chefName, Predicate<Task> matches, int max) {
+        List<Task> taken = new ArrayList<>();
+        ConcurrentLinkedDeque<Task> deque = dequeOf(chefName);
+        for (Task task : deque) {
+            if (taken.size() >= max) {
+                break;
+            }
+            if (matches.test(task) && deque.removeFirstOccurrence(task)) {
+                taken.add(task);
+            }
+        }
+        batched.addAndGet(taken.size());
+        return taken;
+    }
+
+    /**
+     * Put tasks whose ingredient was spoiled (e.g. burned) back at the front of
+     * a chef's own deque, so they are prepared again before newer work
+     *
+     * @param chefName the chef that spoiled them
+     * @param tasks    the tasks, in the order they should be worked on
+     */
+    public void redo(String chefName, List<Task> tasks) {
+        ConcurrentLinkedDeque<Task> deque = dequeOf(chefName);
+        for (int i = tasks.size() - 1; i >= 0; i--) {
+            deque.addFirst(tasks.get(i));
+        }
+        redone.addAndGet(tasks.size());
+    }
+
+    /**
+     * Record that a task's ingredient was delivered to the dish preparer. The
+     * order is done once all of its ingredients are delivered.
+     *
+     * @param task the finished task
+     * @param now  current simulated time in ms
+     */
+    public void complete(Task task, long now) {
+        long latency = now - task.createdAt;
+        completed.incrementAndGet();
+        totalLatency.addAndGet(latency);
+        maxLatency.accumulateAndGet(latency, Math::max);
+
+        if (task.order.remaining.decrementAndGet() == 0) {
+            orderLatencies.add(latency);
+        }
+    }
+
+    /**
+     * Record the walking time of a chef's travel plan for (part of) an order
+     *
+     * @param travelMillis simulated ms of walking in the plan
+     * @param naiveMillis  simulated ms of walking when preparing the same
+     *                     ingredients one by one
+     */
+    public void recordTravelPlan(long travelMillis, long naiveMillis) {
+        plans.incrementAndGet();
+        plannedTravel.addAndGet(travelMillis);
+        naiveTravel.addAndGet(naiveMillis);
+    }
+
+    /**
+     * Get the number of tasks waiting in all deques
+     */
+    public int size() {
+        int size = 0;
+        for (ConcurrentLinkedDeque<Task> deque : deques.values()) {
+            size += deque.size();
+        }
+        return size;
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getStolenCount() {
+        return stolen.get();
+    }
+
+    /**
+     * @return number of tasks that were prepared together with another task of
+     *         the same ingredient
+     */
+    public long getBatchedCount() {
+        return batched.get();
+    }
+
+    /**
+     * @return number of tasks that had to be prepared again
+     */
+    public long getRedoneCount() {
+        return redone.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * @return average time from an order being split to the ingredient being
+     *         delivered, in simulated ms, or 0 if no task completed yet
+     */
+    public long getAverageLatencyMillis() {
+        long count = completed.get();
+        return count == 0 ? 0 : totalLatency.get() / count;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatency.get();
+    }
+
+    /**
+     * @return number of orders whose ingredients were all delivered
+     */
+    public int getCompletedOrderCount() {
+        return orderLatencies.size();
+    }
+
+    /**
+     * Get a percentile of the order latency (order split to last ingredient
+     * delivered)
+     *
+     * @param percentile percentile between 0 and 100
+     * @return latency in simulated ms, or 0 if no order completed yet
+     */
+    public long getOrderLatencyPercentile(double percentile) {
+        List<Long> sorted;
+        synchronized (orderLatencies) {
+            sorted = new ArrayList<>(orderLatencies);
+        }
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    /**
+     * @return mean order latency in simulated ms, or 0 if no order completed yet
+     */
+    public long getAverageOrderLatencyMillis() {
+        synchronized (orderLatencies) {
+            long total = 0;
+            for (long latency : orderLatencies) {
+                total += latency;
+            }
+            return orderLatencies.isEmpty() ? 0 : total / orderLatencies.size();
+        }
+    }
+
+    public long getTravelPlanCount() {
+        return plans.get();
+    }
+
+    /**
+     * @return total simulated ms of walking in the chefs' travel plans
+     */
+    public long getPlannedTravelMillis() {
+        return plannedTravel.get();
+    }
+
+    /**
+     * @return total simulated ms of walking the same work would have taken
+     *         ingredient by ingredient
+     */
+    public long getNaiveTravelMillis() {
+        return naiveTravel.get();
+    }
+
+    /**
+     * @return average simulated ms of walking saved per travel plan, or 0 if
+     *         nothing was planned yet
+     */
+    public long getAverageTravelSavedMillis() {
+        long count = plans.get();
+        return count == 0 ? 0 : (naiveTravel.get() - plannedTravel.get()) / count;
+    }
+
+    /**
+     * Get a one-line summary of the queue and its metrics
+     */
+    public String getSummary() {
+        return "scheduler: " + scheduler.getOptionName() +
+                ", waiting: " + size() + ", submitted: " + getSubmittedCount() + ", stolen: " + getStolenCount() +
+                ", batched: " + getBatchedCount() + ", redone: " + getRedoneCount() +
+                ", completed: " + getCompletedCount() +
+                ", avg latency: " + getAverageLatencyMillis() / 1000.0 + "s" +
+                ", max latency: " + getMaxLatencyMillis() / 1000.0 + "s" +
+                ", orders done: " + getCompletedOrderCount() +
+                " (mean " + getAverageOrderLatencyMillis() / 1000.0 + "s" +
+                ", p95 " + getOrderLatencyPercentile(95) / 1000.0 + "s" +
+                ", max " + getOrderLatencyPercentile(100) / 1000.0 + "s)" +
+                ", travel: " + getPlannedTravelMillis() / 1000.0 + "s planned vs " +
+                getNaiveTravelMillis() / 1000.0 + "s one by one (saved " +
+                getAverageTravelSavedMillis() / 1000.0 + "s per plan)";
+    }
+
+    private ConcurrentLinkedDeque<Task> dequeOf(String chefName) {
+        return deques.computeIfAbsent(chefName, name -> new ConcurrentLinkedDeque<>());
+    }
+}
@@ -0,0 +1,56 @@
+package underfried;
+
+/**
+ * Places in the restaurant the agents walk to, with the spot an agent stands
+ * on (in tile coordinates) and, for real work stations, how many agents or
+ * pots it can serve at the same time.
+ *
+ * Stations with a capacity are shared resources: agents reserve a slot through
+ * Restaurant.getStation() before using them. Stations without a capacity are
+ * just places to walk to.
+ */
+public enum KitchenStation {
+    COOKING("Cooking", 2.0, 2.0, 4), // Burners
+    CUTTING("Cutting", 5.0, 2.0, 2), // Cutting boards
+    PREP("Prep", 7.5, 2.5, 3), // Plating spots
+    WASHING("Washing", 7.5, 11.5, 2), // Sinks
+    CLEAN_PLATE_DROP("Clean plates", 7.5, 3.0, 0), // Where the washer leaves clean plates
+    DIRTY_PLATE_PICKUP("Dirty plates", 8.0, 8.0, 0), // Where the waiter leaves dirty plates
+    COUNTER("Counter", 9.5, 7.0, 0),
+    DINING_AREA("Dining", 15.0, 7.0, 0);
+
+    private final String displayName;
+    private final double x, y;
+    private final int capacity;
+
+    KitchenStation(String displayName, double x, double y, int capacity) {
+        this.displayName = displayName;
+        this.x = x;
+        this.y = y;
+        this.capacity = capacity;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * @return number of slots that can be reserved at once, 0 if the station is
+     *         not a shared resource
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isResource() {
+        return capacity > 0;
+    }
+}
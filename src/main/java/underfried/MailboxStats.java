@@ -0,0 +1,113 @@
+package underfried;
+
+/**
+ * How well an agent keeps up with the notifications in its mailbox, measured
+ * on the simulation clock.
+ *
+ * Senders stamp each notification with the simulated time it was sent (see
+ * SENT_AT), so the agent can record how long it sat in the mailbox. The agent
+ * also records how many messages were waiting whenever it looked, and how many
+ * rounds of work it needed for its notifications: several notifications that
+ * arrived close together are coalesced into one round, e.g. one trip to the
+ * dirty plate pile.
+ */
+public class MailboxStats {
+    // Name of the message parameter with the simulated ms a notification was sent
+    public static final String SENT_AT = "sent-at";
+
+    private final String agentName;
+    private final SimulationClock clock;
+
+    // Metrics
+    private long notifications;
+    private long stamped; // Notifications with a SENT_AT time
+    private long rounds;
+    private long totalLatency;
+    private long maxLatency;
+    private int lastBacklog;
+    private int peakBacklog;
+
+    public MailboxStats(String agentName, SimulationClock clock) {
+        this.agentName = agentName;
+        this.clock = clock;
+    }
+
+    /**
+     * Record how many messages were waiting when the agent looked at its
+     * mailbox
+     */
+    public synchronized void checked(int backlog) {
+        lastBacklog = backlog;
+        peakBacklog = Math.max(peakBacklog, backlog);
+    }
+
+    /**
+     * Record a notification taken from the mailbox
+     *
+     * @param sentAt simulated ms it was sent, or -1 if the sender didn't stamp it
+     */
+    public synchronized void received(long sentAt) {
+        notifications++;
+        if (sentAt >= 0) {
+            long latency = Math.max(0, clock.now() - sentAt);
+            stamped++;
+            totalLatency += latency;
+            maxLatency = Math.max(maxLatency, latency);
+        }
+    }
+
+    /**
+     * Record one round of work that dealt with all notifications received so
+     * far
+     */
+    public synchronized void handled() {
+        rounds++;
+    }
+
+    // ==================== Queries ====================
+
+    public String getAgentName() {
+        return agentName;
+    }
+
+    public synchronized long getNotificationCount() {
+        return notifications;
+    }
+
+    public synchronized long getRoundCount() {
+        return rounds;
+    }
+
+    /**
+     * @return messages waiting the last time the agent looked
+     */
+    public synchronized int getBacklog() {
+        return lastBacklog;
+    }
+
+    public synchronized int getPeakBacklog() {
+        return peakBacklog;
+    }
+
+    /**
+     * @return average simulated ms a notification waited in the mailbox, or 0
+     *         if none was stamped
+     */
+    public synchronized long getAverageLatencyMillis() {
+        return stamped == 0 ? 0 : totalLatency / stamped;
+    }
+
+    public synchronized long getMaxLatencyMillis() {
+        return maxLatency;
+    }
+
+    /**
+     * Get a one-line summary of the mailbox metrics
+     */
+    public synchronized String getSummary() {
+        return agentName + ": notifications: " + notifications + " handled in " + rounds + " rounds" +
+                ", backlog: " + lastBacklog + " (peak " + peakBacklog + ")" +
+                ", avg latency: " + getAverageLatencyMillis() / 1000.0 + "s" +
+                ", max latency: " + maxLatency / 1000.0 + "s";
+    }
+}
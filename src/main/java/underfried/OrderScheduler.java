@@ -0,0 +1,85 @@
+package underfried;
+
+import java.util.Comparator;
+
+import underfried.IngredientTaskQueue.Task;
+
+/**
+ * Policies deciding which queued ingredient task a chef works on next.
+ *
+ * Tasks are ranked by the order (meal) they belong to, so all ingredients of
+ * the chosen order come before the next one. Ties always fall back to arrival
+ * order.
+ */
+public enum OrderScheduler {
+    // First come, first served
+    FIFO("fifo") {
+        @Override
+        public Comparator<Task> priority(long now) {
+            return ARRIVAL;
+        }
+    },
+    // Cheapest order first. Best mean latency, but expensive dishes can starve
+    // while cheap orders keep arriving
+    SHORTEST_PROCESSING_TIME("spt") {
+        @Override
+        public Comparator<Task> priority(long now) {
+            return Comparator.<Task>comparingLong(task -> task.order.cost).thenComparing(ARRIVAL);
+        }
+    },
+    // Order whose promised time is closest first
+    EARLIEST_DEADLINE_FIRST("edf") {
+        @Override
+        public Comparator<Task> priority(long now) {
+            return Comparator.<Task>comparingLong(task -> task.order.deadline).thenComparing(ARRIVAL);
+        }
+    },
+    // Highest response ratio (waiting time + cost) / cost first. Cheap orders go
+    // first, but every order's priority grows while it waits, so expensive
+    // dishes are never starved
+    WEIGHTED_AGE("weighted-age") {
+        @Override
+        public Comparator<Task> priority(long now) {
+            return Comparator.<Task>comparingDouble(task -> -responseRatio(task.order, now)).thenComparing(ARRIVAL);
+        }
+    };
+
+    private static final Comparator<Task> ARRIVAL = Comparator.comparingLong(task -> task.order.id);
+
+    private final String optionName;
+
+    OrderScheduler(String optionName) {
+        this.optionName = optionName;
+    }
+
+    /**
+     * Get the ranking of tasks at a point in time, most urgent first
+     *
+     * @param now current simulated time in ms
+     */
+    public abstract Comparator<Task> priority(long now);
+
+    public String getOptionName() {
+        return optionName;
+    }
+
+    private static double responseRatio(IngredientTaskQueue.Order order, long now) {
+        long cost = Math.max(1, order.cost);
+        return (double) (now - order.createdAt + cost) / cost;
+    }
+
+    /**
+     * Get a policy from its command line name: "fifo", "spt", "edf" or
+     * "weighted-age"
+     *
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static OrderScheduler parse(String name) {
+        for (OrderScheduler scheduler : values()) {
+            if (scheduler.optionName.equalsIgnoreCase(name)) {
+                return scheduler;
+            }
+        }
+        throw new IllegalArgumentException("Unknown scheduler '" + name + "', expected fifo, spt, edf or weighted-age");
+    }
+}
@@ -0,0 +1,312 @@
+package underfried;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PlateInventory tracks every plate in the restaurant as it moves through
+ * its life cycle:
+ *
+ * clean -> taken (plated by the DishPreparer, on the counter or at a table)
+ * taken -> dirty (bussed by the Waiter)
+ * dirty -> washing (picked up by the DishWasher)
+ * washing -> clean (delivered back to the DishPreparer)
+ *
+ * All counters are packed into a single AtomicLong, so each transition is one
+ * CAS and any snapshot is consistent. Every transition checks that the total
+ * number of plates is conserved.
+ *
+ * Plates are interchangeable, so the turnaround time of a plate (from being
+ * taken until it is clean again) is measured by matching take and return
+ * timestamps in FIFO order. The timestamps are only metrics and sit behind a
+ * small lock of their own. A plate's timestamp is consumed before the plate
+ * becomes clean again, so there is always room for the timestamp of the next
+ * take.
+ */
+public class PlateInventory {
+    // Bit layout of the packed state: five 12-bit counters
+    private static final int BITS = 12;
+    private static final long FIELD_MASK = (1L << BITS) - 1;
+    private static final int CLEAN = 0;
+    private static final int TAKEN = 1;
+    private static final int DIRTY = 2;
+    private static final int WASHING = 3;
+    private static final int SERVED = 4; // Taken plates that are at a table
+    public static final int MAX_PLATES = (int) FIELD_MASK;
+
+    private final int totalPlates;
+    private final SimulationClock clock;
+    private final AtomicLong state;
+
+    // Take timestamps of plates out of the clean stock, oldest at takenHead.
+    // Guarded by takenAt.
+    private final long[] takenAt;
+    private int takenHead;
+    private int takenCount;
+
+    // Metrics
+    private final AtomicLong completedCycles = new AtomicLong();
+    private final AtomicLong totalTurnaround = new AtomicLong();
+    private final AtomicLong maxTurnaround = new AtomicLong();
+    private final AtomicLong peakInUse = new AtomicLong();
+
+    public PlateInventory(int totalPlates, SimulationClock clock) {
+        if (totalPlates < 0 || totalPlates > MAX_PLATES) {
+            throw new IllegalArgumentException("Plate count must be between 0 and " + MAX_PLATES);
+        }
+        this.totalPlates = totalPlates;
+        this.clock = clock;
+        this.state = new AtomicLong(pack(totalPlates, CLEAN));
+        this.takenAt = new long[Math.max(1, totalPlates)];
+    }
+
+    // ==================== Transitions ====================
+
+    /**
+     * Take a clean plate to plate a dish (clean -> taken)
+     *
+     * @return true if a clean plate was available
+     */
+    public boolean takeClean() {
+        long current, next;
+        do {
+            current = state.get();
+            if (get(current, CLEAN) == 0) {
+                return false;
+            }
+            next = add(add(current, CLEAN, -1), TAKEN, 1);
+            checkConserved(next);
+        } while (!state.compareAndSet(current, next));
+
+        long now = clock.now();
+        synchronized (takenAt) {
+            if (takenCount == takenAt.length) {
+                throw new IllegalStateException("More take timestamps than plates: " + describe(state.get()));
+            }
+            takenAt[(takenHead + takenCount) % takenAt.length] = now;
+            takenCount++;
+        }
+        peakInUse.accumulateAndGet(totalPlates - get(next, CLEAN), Math::max);
+        return true;
+    }
+
+    /**
+     * Put back a plate that was taken but never used (taken -> clean), e.g. when
+     * assembly was interrupted. The newest take timestamp is discarded, which
+     * is the caller's own unless other plates were taken since.
+     */
+    public void returnClean() {
+        synchronized (takenAt) {
+            if (takenCount == 0) {
+                throw new IllegalStateException("No plate was taken: " + describe(state.get()));
+            }
+            takenCount--;
+        }
+        transfer(TAKEN, CLEAN, 1);
+    }
+
+    /**
+     * Record that a plated dish reached a customer's table
+     */
+    public void serve() {
+        long current, next;
+        do {
+            current = state.get();
+            if (get(current, SERVED) >= get(current, TAKEN)) {
+                throw new IllegalStateException("Served more plates than were taken: " + describe(current));
+            }
+            next = add(current, SERVED, 1);
+        } while (!state.compareAndSet(current, next));
+    }
+
+    /**
+     * Bus empty plates from the tables back to the kitchen (taken -> dirty)
+     *
+     * @param count number of plates to bus
+     * @return number of plates actually bussed, limited by the plates at tables
+     */
+    public int bus(int count) {
+        long current, next;
+        int bussed;
+        do {
+            current = state.get();
+            bussed = (int) Math.min(count, get(current, SERVED));
+            if (bussed <= 0) {
+                return 0;
+            }
+            next = add(add(add(current, SERVED, -bussed), TAKEN, -bussed), DIRTY, bussed);
+            checkConserved(next);
+        } while (!state.compareAndSet(current, next));
+        return bussed;
+    }
+
+    /**
+     * Pick up dirty plates to wash (dirty -> washing)
+     *
+     * @param max maximum number of plates to pick up
+     * @return number of plates picked up
+     */
+    public int startWashing(int max) {
+        long current, next;
+        int picked;
+        do {
+            current = state.get();
+            picked = (int) Math.min(max, get(current, DIRTY));
+            if (picked <= 0) {
+                return 0;
+            }
+            next = add(add(current, DIRTY, -picked), WASHING, picked);
+            checkConserved(next);
+        } while (!state.compareAndSet(current, next));
+        return picked;
+    }
+
+    /**
+     * Put plates back in the dirty pile if washing was interrupted
+     * (washing -> dirty)
+     *
+     * @param count number of plates to return
+     */
+    public void abortWashing(int count) {
+        transfer(WASHING, DIRTY, count);
+    }
+
+    /**
+     * Washed plates arrive back in the clean stock (washing -> clean)
+     *
+     * @param count number of plates
+     */
+    public void finishWashing(int count) {
+        long now = clock.now();
+        synchronized (takenAt) {
+            if (takenCount < count) {
+                throw new IllegalStateException("Cannot finish washing " + count + " plates, only " + takenCount
+                        + " were taken: " + describe(state.get()));
+            }
+            for (int i = 0; i < count; i++) {
+                long turnaround = now - takenAt[takenHead];
+                takenHead = (takenHead + 1) % takenAt.length;
+                takenCount--;
+                completedCycles.incrementAndGet();
+                totalTurnaround.addAndGet(turnaround);
+                maxTurnaround.accumulateAndGet(turnaround, Math::max);
+            }
+        }
+        // Only now may the plates be taken again
+        transfer(WASHING, CLEAN, count);
+    }
+
+    private void transfer(int from, int to, int count) {
+        long current, next;
+        do {
+            current = state.get();
+            if (get(current, from) < count) {
+                throw new IllegalStateException("Cannot move " + count + " plates, only " + get(current, from)
+                        + " available: " + describe(current));
+            }
+            next = add(add(current, from, -count), to, count);
+            checkConserved(next);
+        } while (!state.compareAndSet(current, next));
+    }
+
+    // ==================== Queries ====================
+
+    public int getClean() {
+        return (int) get(state.get(), CLEAN);
+    }
+
+    public int getTaken() {
+        return (int) get(state.get(), TAKEN);
+    }
+
+    public int getServed() {
+        return (int) get(state.get(), SERVED);
+    }
+
+    public int getDirty() {
+        return (int) get(state.get(), DIRTY);
+    }
+
+    public int getWashing() {
+        return (int) get(state.get(), WASHING);
+    }
+
+    public int getTotal() {
+        return totalPlates;
+    }
+
+    /**
+     * Check the conservation invariant on the current state
+     *
+     * @return true if clean + taken + dirty + washing equals the total
+     */
+    public boolean isConserved() {
+        long current = state.get();
+        return sum(current) == totalPlates && get(current, SERVED) <= get(current, TAKEN);
+    }
+
+    /**
+     * Highest number of plates that were out of the clean stock at once.
+     * This is how many plates the current load actually needs.
+     */
+    public int getPeakInUse() {
+        return (int) peakInUse.get();
+    }
+
+    public long getCompletedCycles() {
+        return completedCycles.get();
+    }
+
+    /**
+     * @return average turnaround in simulated ms, or 0 if no plate completed a
+     *         cycle yet
+     */
+    public long getAverageTurnaroundMillis() {
+        long cycles = completedCycles.get();
+        return cycles == 0 ? 0 : totalTurnaround.get() / cycles;
+    }
+
+    public long getMaxTurnaroundMillis() {
+        return maxTurnaround.get();
+    }
+
+    /**
+     * Get a one-line summary of the inventory and its metrics
+     */
+    public String getSummary() {
+        return describe(state.get()) + ", peak in use: " + getPeakInUse() + "/" + totalPlates +
+                ", cycles: " + getCompletedCycles() +
+                ", avg turnaround: " + getAverageTurnaroundMillis() / 1000.0 + "s" +
+                ", max turnaround: " + getMaxTurnaroundMillis() / 1000.0 + "s";
+    }
+
+    // ==================== Packed state helpers ====================
+
+    private static long get(long packed, int field) {
+        return (packed >>> (field * BITS)) & FIELD_MASK;
+    }
+
+    private static long add(long packed, int field, long delta) {
+        return packed + (delta << (field * BITS));
+    }
+
+    private static long pack(long value, int field) {
+        return value << (field * BITS);
+    }
+
+    private static long sum(long packed) {
+        return get(packed, CLEAN) + get(packed, TAKEN) + get(packed, DIRTY) + get(packed, WASHING);
+    }
+
+    private void checkConserved(long packed) {
+        if (sum(packed) != totalPlates) {
+            throw new IllegalStateException("Plate count not conserved (expected " + totalPlates + "): "
+                    + describe(packed));
+        }
+    }
+
+    private static String describe(long packed) {
+        return "clean: " + get(packed, CLEAN) + ", taken: " + get(packed, TAKEN) +
+                " (served: " + get(packed, SERVED) + "), dirty: " + get(packed, DIRTY) +
+                ", washing: " + get(packed, WASHING);
+    }
+}
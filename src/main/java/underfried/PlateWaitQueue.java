@@ -0,0 +1,154 @@
+package underfried;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Dishes whose ingredients are all ready but that found no clean plate.
+ *
+ * A dish is parked here instead of being dropped, and is handed out again only
+ * together with a clean plate, oldest order first. The DishPreparer unparks
+ * dishes whenever washed plates arrive, so exactly as many dishes leave the
+ * queue as there are plates for them.
+ *
+ * Two metrics are measured on the simulation clock: how long each dish waited
+ * for its plate, and the plate starvation time, i.e. how long at least one
+ * dish was parked. Starvation time is what plate shortages cost the kitchen as
+ * a whole, however many dishes were stuck at once.
+ */
+public class PlateWaitQueue {
+
+    private static class Parked {
+        final TicketTable.Ticket ticket;
+        final long orderedAt;
+        final long parkedAt;
+
+        Parked(TicketTable.Ticket ticket, long parkedAt) {
+            this.ticket = ticket;
+            this.orderedAt = ticket.getTime(TicketTable.Stage.ORDERED);
+            this.parkedAt = parkedAt;
+        }
+    }
+
+    // Oldest order first, ticket IDs break ties
+    private static final Comparator<Parked> BY_ORDER_AGE = Comparator
+            .comparingLong((Parked parked) -> parked.orderedAt)
+            .thenComparingLong(parked -> parked.ticket.id);
+
+    private final PlateInventory plates;
+    private final SimulationClock clock;
+    private final PriorityQueue<Parked> parked = new PriorityQueue<>(BY_ORDER_AGE);
+    private long starvedSince = -1; // Simulated ms the queue became non-empty, -1 if empty
+
+    // Metrics
+    private long parkedCount;
+    private long totalWait;
+    private long maxWait;
+    private long starvationMillis;
+    private int peakParked;
+
+    public PlateWaitQueue(PlateInventory plates, SimulationClock clock) {
+        this.plates = plates;
+        this.clock = clock;
+    }
+
+    /**
+     * Take a clean plate for a dish, or park the dish until there is one. Older
+     * dishes already waiting get the next plates first.
+     *
+     * Checking for a plate and parking happen under one lock, so plates that
+     * arrive in between can't miss the dish: whoever brings them unparks it.
+     *
+     * @param ticket the order whose ingredients are all ready
+     * @return true if the caller got a plate and may assemble the dish right
+     *         away, false if the dish was parked
+     */
+    public synchronized boolean takeOrPark(TicketTable.Ticket ticket) {
+        if (parked.isEmpty() && plates.takeClean()) {
+            return true;
+        }
+
+        long now = clock.now();
+        if (parked.isEmpty()) {
+            starvedSince = now;
+        }
+        parked.add(new Parked(ticket, now));
+        parkedCount++;
+        peakParked = Math.max(peakParked, parked.size());
+        return false;
+    }
+
+    /**
+     * Unpark the oldest dish if a clean plate can be taken for it
+     *
+     * @return the dish, with a plate taken for it, or null if no dish is parked
+     *         or there is no clean plate
+     */
+    public synchronized TicketTable.Ticket unpark() {
+        if (parked.isEmpty() || !plates.takeClean()) {
+            return null;
+        }
+
+        long now = clock.now();
+        Parked head = parked.poll();
+        long wait = now - head.parkedAt;
+        totalWait += wait;
+        maxWait = Math.max(maxWait, wait);
+        if (parked.isEmpty()) {
+            starvationMillis += now - starvedSince;
+            starvedSince = -1;
+        }
+        return head.ticket;
+    }
+
+    // ==================== Queries ====================
+
+    /**
+     * @return number of dishes currently waiting for a plate
+     */
+    public synchronized int size() {
+        return parked.size();
+    }
+
+    public synchronized int getPeakParked() {
+        return peakParked;
+    }
+
+    /**
+     * @return number of dishes that ever had to wait for a plate
+     */
+    public synchronized long getParkedCount() {
+        return parkedCount;
+    }
+
+    /**
+     * @return average simulated ms an unparked dish waited for its plate, or 0
+     *         if none did
+     */
+    public synchronized long getAverageWaitMillis() {
+        long unparked = parkedCount - parked.size();
+        return unparked == 0 ? 0 : totalWait / unparked;
+    }
+
+    public synchronized long getMaxWaitMillis() {
+        return maxWait;
+    }
+
+    /**
+     * @return simulated ms during which at least one dish was waiting for a
+     *         plate, including the current stretch
+     */
+    public synchronized long getStarvationMillis() {
+        return starvationMillis + (starvedSince < 0 ? 0 : clock.now() - starvedSince);
+    }
+
+    /**
+     * Get a one-line summary of the queue and its metrics
+     */
+    public synchronized String getSummary() {
+        return "parked: " + size() + " (peak " + getPeakParked() + "), dishes that waited: " + getParkedCount() +
+                ", avg wait: " + getAverageWaitMillis() / 1000.0 + "s" +
+                ", max wait: " + getMaxWaitMillis() / 1000.0 + "s" +
+                ", plate starvation: " + getStarvationMillis() / 1000.0 + "s";
+    }
+}
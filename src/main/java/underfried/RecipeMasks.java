@@ -0,0 +1,98 @@
+package underfried;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The menu's recipes compiled to bitmasks, so checking whether a dish has all
+ * of its ingredients is a single AND instead of a set comparison.
+ *
+ * Every ingredient on the menu is interned to a small integer ID, its bit in
+ * the masks. A dish in progress keeps the mask of the ingredients delivered so
+ * far and is complete once it covers the recipe's mask. The menu never changes
+ * after the restaurant opens, so the masks are built once and only read
+ * afterwards.
+ */
+public class RecipeMasks {
+    // One bit per ingredient in a long
+    public static final int MAX_INGREDIENTS = Long.SIZE;
+
+    private final Map<String, Integer> ingredientIds = new HashMap<>();
+    private final List<String> ingredientNames = new ArrayList<>(); // Indexed by ID
+    private final Map<String, Long> recipeMasks = new HashMap<>();
+
+    /**
+     * Compile the recipes of a menu
+     *
+     * @param menu dish name to ingredient names
+     * @throws IllegalArgumentException if the menu uses more than
+     *                                  MAX_INGREDIENTS different ingredients
+     */
+    public RecipeMasks(Map<String, String[]> menu) {
+        for (Map.Entry<String, String[]> dish : menu.entrySet()) {
+            long mask = 0;
+            for (String ingredient : dish.getValue()) {
+                mask |= 1L << intern(ingredient.trim().toLowerCase());
+            }
+            recipeMasks.put(dish.getKey(), mask);
+        }
+    }
+
+    private int intern(String ingredient) {
+        Integer id = ingredientIds.get(ingredient);
+        if (id == null) {
+            if (ingredientIds.size() == MAX_INGREDIENTS) {
+                throw new IllegalArgumentException("Menu uses more than " + MAX_INGREDIENTS + " ingredients");
+            }
+            id = ingredientIds.size();
+            ingredientIds.put(ingredient, id);
+            ingredientNames.add(ingredient);
+        }
+        return id;
+    }
+
+    /**
+     * Get the bit of an ingredient
+     *
+     * @param ingredient ingredient name
+     * @return the ingredient's bit, or 0 if no dish on the menu uses it
+     */
+    public long bitOf(String ingredient) {
+        Integer id = ingredientIds.get(ingredient.toLowerCase());
+        return id == null ? 0 : 1L << id;
+    }
+
+    /**
+     * Get the mask of all ingredients of a dish
+     *
+     * @param dishName dish name
+     * @return the recipe's mask, or 0 if the dish isn't on the menu
+     */
+    public long maskOf(String dishName) {
+        return recipeMasks.getOrDefault(dishName.toLowerCase(), 0L);
+    }
+
+    /**
+     * Check whether the ingredients delivered so far complete a recipe
+     *
+     * @param delivered mask of the delivered ingredients
+     * @param recipe    mask of the recipe
+     */
+    public static boolean isComplete(long delivered, long recipe) {
+        return (delivered & recipe) == recipe;
+    }
+
+    /**
+     * Get the names of the ingredients in a mask, e.g. to log what a dish is
+     * still missing
+     */
+    public List<String> namesOf(long mask) {
+        List<String> names = new ArrayList<>();
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            names.add(ingredientNames.get(Long.numberOfTrailingZeros(bits)));
+        }
+        return names;
+    }
+}
@@ -1,17 +1,49 @@
 package underfried;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.Queue;
 import java.util.List;
-import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class Restaurant {
     public Restaurant() {
+        this(SimulationClock.realTime());
+    }
+
+    public Restaurant(SimulationClock clock) {
+        this.clock = clock;
+        this.plates = new PlateInventory(TOTAL_PLATES, clock);
+        this.plateWait = new PlateWaitQueue(plates, clock);
         this.menu = new HashMap<>();
-        this.activeConditions = new ArrayList<>();
+        this.conditions = new ConditionIndex(GRID_WIDTH, GRID_HEIGHT);
+        this.hazards = new HazardEventBus(clock);
+        this.kitchenTasks = new IngredientTaskQueue(clock);
+        this.tickets = new TicketTable(clock);
+        for (KitchenStation station : KitchenStation.values()) {
+            if (station.isResource()) {
+                stations.put(station, new StationResource(station, clock));
+            }
+        }
+        for (StaffRole role : StaffRole.values()) {
+            staff.put(role, new CopyOnWriteArrayList<>());
+        }
         initializeMenu();
+        this.recipeMasks = new RecipeMasks(menu);
+    }
+
+    // Roles agents can be registered under in the staff roster
+    public enum StaffRole {
+        CHEF,
+        WAITER,
+        RUNNER,
+        DISH_PREPARER,
+        DISH_WASHER
     }
 
     // Environmental condition tracking
@@ -41,7 +73,9 @@ public class Restaurant {
         public EnvironmentalCondition type;
         public double x, y; // Position in tile coordinates
         public String affectedItem; // For burned food, the dish name
-        public boolean resolved;
+        public volatile boolean resolved;
+        public long reportedAt; // Simulated ms when the condition appeared
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
 
         public ActiveCondition(EnvironmentalCondition type, double x, double y) {
             this.type = type;
@@ -54,22 +88,72 @@ public class Restaurant {
             this(type, x, y);
             this.affectedItem = affectedItem;
         }
+
+        /**
+         * Claim this condition so that only one agent responds to it
+         * 
+         * @return true if the caller claimed it, false if it was already claimed
+         */
+        public boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
     }
 
-    public List<ActiveCondition> activeConditions;
+    // Floor plan size in tiles (matches the GamePanel grid)
+    private static final int GRID_WIDTH = 20;
+    private static final int GRID_HEIGHT = 15;
+
+    // Active environmental conditions, indexed by type and tile
+    private final ConditionIndex conditions;
+
+    // Publishes hazard events to subscribed agents
+    private final HazardEventBus hazards;
+
+    // Number of plates the restaurant owns
+    private static final int TOTAL_PLATES = 10;
+
+    // Clean/taken/dirty/washing plate counts, shared by Waiter, DishPreparer and
+    // DishWasher
+    private final PlateInventory plates;
+
+    // Dishes ready to assemble that are waiting for a clean plate
+    private final PlateWaitQueue plateWait;
 
-    public int cleanPlates = 10;
-    public int takenPlates = 0;
-    public int dirtyPlates = 0;
+    // Maximum number of orders/dishes each queue can hold
+    private static final int QUEUE_CAPACITY = 256;
 
     // Queue for dishes ready to be served (populated by DishPreparer)
-    public Queue<String> readyDishes = new LinkedList<>();
+    private final BoundedMpmcQueue<TicketTable.Ticket> readyDishes = new BoundedMpmcQueue<>(QUEUE_CAPACITY);
 
-    // Queue for pending orders (added by Waiter, consumed by Chef)
-    public Queue<String> pendingOrders = new LinkedList<>();
+    // Called whenever a dish is placed on the counter, so runners don't poll it
+    private final List<Runnable> dishReadyListeners = new CopyOnWriteArrayList<>();
+
+    // Every order from being taken until it is served (opened by Waiter)
+    private final TicketTable tickets;
+
+    // Ingredient tasks split from orders, shared by all chefs
+    private final IngredientTaskQueue kitchenTasks;
+
+    // Work stations with limited capacity, reserved by the agents using them
+    private final Map<KitchenStation, StationResource> stations = new EnumMap<>(KitchenStation.class);
+
+    // Local names of the agents working in each role
+    private final Map<StaffRole, List<String>> staff = new EnumMap<>(StaffRole.class);
+
+    // Notification metrics of the agents that record them, by local name
+    private final Map<String, MailboxStats> mailboxes = new ConcurrentSkipListMap<>();
 
     private Map<String, String[]> menu;
 
+    // The menu's recipes compiled to ingredient bitmasks
+    private final RecipeMasks recipeMasks;
+
+    // Ingredients delivered for orders not complete yet, shared by all preparers
+    private final AssemblyBoard assemblyBoard = new AssemblyBoard();
+
+    // Source of simulated time shared by all agents and the UI
+    private final SimulationClock clock;
+
     /**
      * Initialize the restaurant menu with available dishes and their recipes
      */
@@ -93,6 +177,31 @@ public class Restaurant {
         menu.put("chicken_soup", new String[] { "chicken", "carrot", "potato" });
     }
 
+    /**
+     * Get the simulation clock used for all work and spawn timing
+     * 
+     * @return the restaurant's simulation clock
+     */
+    public SimulationClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Get the plate inventory
+     * 
+     * @return the restaurant's plates and their states
+     */
+    public PlateInventory getPlates() {
+        return plates;
+    }
+
+    /**
+     * Get the dishes waiting for a clean plate
+     */
+    public PlateWaitQueue getPlateWait() {
+        return plateWait;
+    }
+
     /**
      * Get the recipe for a specific dish
      * 
@@ -103,6 +212,20 @@ public class Restaurant {
         return menu.get(dishName.toLowerCase());
     }
 
+    /**
+     * Get the menu's recipes as ingredient bitmasks
+     */
+    public RecipeMasks getRecipeMasks() {
+        return recipeMasks;
+    }
+
+    /**
+     * Get the ingredients delivered so far for orders that are missing some
+     */
+    public AssemblyBoard getAssemblyBoard() {
+        return assemblyBoard;
+    }
+
     /**
      * Get all available dishes in the menu
      * 
@@ -124,36 +247,87 @@ public class Restaurant {
     // ==================== Order Management Methods ====================
 
     /**
-     * Add an order to the pending orders queue (used by Waiter)
+     * Open a ticket for a new order (used by Waiter)
      * 
      * @param dishName the name of the dish ordered
-     * @return true if order was added, false if dish doesn't exist in menu
+     * @return the order's ticket, or null if the dish doesn't exist in the menu
+     *         or too many orders are waiting for a chef
      */
-    public boolean addOrder(String dishName) {
-        if (menu.containsKey(dishName.toLowerCase())) {
-            pendingOrders.add(dishName.toLowerCase());
-            return true;
+    public TicketTable.Ticket addOrder(String dishName) {
+        if (!menu.containsKey(dishName.toLowerCase())) {
+            return null;
         }
-        return false;
+        if (getPendingOrderCount() >= QUEUE_CAPACITY) {
+            tickets.reject();
+            return null;
+        }
+        return tickets.open(dishName.toLowerCase());
     }
 
     /**
-     * Get the next pending order (used by Chef)
-     * Removes and returns the order from the queue
+     * Claim an order to split it into ingredient tasks (used by Chef)
      * 
-     * @return the next dish name to prepare, or null if no orders pending
+     * @param ticketId the order's ticket ID from the order message
+     * @return the ticket, or null if the ID is unknown or the order was already
+     *         claimed
      */
-    public String getNextOrder() {
-        return pendingOrders.poll();
+    public TicketTable.Ticket claimOrder(long ticketId) {
+        TicketTable.Ticket ticket = tickets.get(ticketId);
+        if (ticket == null || !tickets.advance(ticket, TicketTable.Stage.SPLIT)) {
+            return null;
+        }
+        return ticket;
     }
 
     /**
-     * Get the number of pending orders
+     * Get the number of orders not yet claimed by a chef
      * 
-     * @return count of orders in the queue
+     * @return count of orders waiting for a chef
      */
     public int getPendingOrderCount() {
-        return pendingOrders.size();
+        return tickets.getCount(TicketTable.Stage.ORDERED) + tickets.getCount(TicketTable.Stage.SENT);
+    }
+
+    /**
+     * Place a finished dish on the counter (used by DishPreparer)
+     * 
+     * @param ticket the ticket of the finished dish
+     * @return true if the dish was added, false if the counter is full
+     */
+    public boolean addReadyDish(TicketTable.Ticket ticket) {
+        if (!readyDishes.offer(ticket)) {
+            return false;
+        }
+        tickets.advance(ticket, TicketTable.Stage.PLATED);
+        for (Runnable listener : dishReadyListeners) {
+            listener.run();
+        }
+        return true;
+    }
+
+    /**
+     * Get called whenever a dish is placed on the counter. The listener runs on
+     * the thread of the agent that placed it, so it should only wake up its
+     * own agent.
+     */
+    public void subscribeReadyDishes(Runnable listener) {
+        dishReadyListeners.add(listener);
+    }
+
+    /**
+     * Pick up the next ready dish (used by the runners)
+     * 
+     * @return the ticket of the next dish to serve, or null if none is ready
+     */
+    public TicketTable.Ticket pollReadyDish() {
+        return pickedUp(readyDishes.poll());
+    }
+
+    private TicketTable.Ticket pickedUp(TicketTable.Ticket ticket) {
+        if (ticket != null) {
+            tickets.advance(ticket, TicketTable.Stage.PICKED_UP);
+        }
+        return ticket;
     }
 
     /**
@@ -165,6 +339,82 @@ public class Restaurant {
         return readyDishes.size();
     }
 
+    /**
+     * Get the ticket table following every order through the restaurant
+     */
+    public TicketTable getTickets() {
+        return tickets;
+    }
+
+    /**
+     * Get the ingredient tasks waiting to be picked up by the chefs
+     */
+    public IngredientTaskQueue getKitchenTasks() {
+        return kitchenTasks;
+    }
+
+    // ==================== Stations ====================
+
+    /**
+     * Get the shared resource of a work station, to reserve a slot at it
+     * 
+     * @param station a station with a capacity
+     * @return the station's resource
+     * @throws IllegalArgumentException if the station has no capacity
+     */
+    public StationResource getStation(KitchenStation station) {
+        StationResource resource = stations.get(station);
+        if (resource == null) {
+            throw new IllegalArgumentException(station.getDisplayName() + " is not a shared resource");
+        }
+        return resource;
+    }
+
+    /**
+     * Get all work stations with a capacity
+     */
+    public Collection<StationResource> getStations() {
+        return Collections.unmodifiableCollection(stations.values());
+    }
+
+    // ==================== Staff Roster ====================
+
+    /**
+     * Add an agent to the staff roster
+     * 
+     * @param role      the role the agent works in
+     * @param agentName local name of the agent
+     */
+    public void registerStaff(StaffRole role, String agentName) {
+        staff.get(role).add(agentName);
+    }
+
+    /**
+     * Get the local names of all agents working in a role
+     * 
+     * @param role the role to look up
+     * @return read-only list of agent names, in registration order
+     */
+    public List<String> getStaff(StaffRole role) {
+        return Collections.unmodifiableList(staff.get(role));
+    }
+
+    /**
+     * Get the notification metrics of an agent, creating them on first use
+     *
+     * @param agentName local name of the agent
+     */
+    public MailboxStats getMailboxStats(String agentName) {
+        return mailboxes.computeIfAbsent(agentName, name -> new MailboxStats(name, clock));
+    }
+
+    /**
+     * Get the notification metrics of all agents that record them, by name
+     */
+    public Collection<MailboxStats> getMailboxStats() {
+        return Collections.unmodifiableCollection(mailboxes.values());
+    }
+
     // ==================== Environmental Condition Management ====================
 
     /**
@@ -177,7 +427,9 @@ public class Restaurant {
      */
     public ActiveCondition addCondition(EnvironmentalCondition condition, double x, double y) {
         ActiveCondition newCondition = new ActiveCondition(condition, x, y);
-        activeConditions.add(newCondition);
+        newCondition.reportedAt = clock.now();
+        conditions.add(newCondition);
+        hazards.reported(newCondition);
         return newCondition;
     }
 
@@ -191,7 +443,9 @@ public class Restaurant {
      */
     public ActiveCondition addBurnedFood(double x, double y, String dishName) {
         ActiveCondition newCondition = new ActiveCondition(EnvironmentalCondition.BURNED_FOOD, x, y, dishName);
-        activeConditions.add(newCondition);
+        newCondition.reportedAt = clock.now();
+        conditions.add(newCondition);
+        hazards.reported(newCondition);
         return newCondition;
     }
 
@@ -199,32 +453,68 @@ public class Restaurant {
      * Resolve/remove a condition (e.g., fire extinguished, rat caught)
      * 
      * @param condition the condition to resolve
+     * @return true if this call resolved it, false if it was already resolved
      */
-    public void resolveCondition(ActiveCondition condition) {
+    public boolean resolveCondition(ActiveCondition condition) {
         condition.resolved = true;
+        if (conditions.remove(condition)) {
+            hazards.resolved(condition);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Claim a condition before dealing with it, so that only one agent responds
+     * and the response time is recorded
+     * 
+     * @param condition the condition to respond to
+     * @return true if the caller should handle it, false if someone else already
+     *         is or it is already resolved
+     */
+    public boolean claimCondition(ActiveCondition condition) {
+        return hazards.respond(condition);
+    }
+
+    /**
+     * Get the hazard event bus, to subscribe to fires, rats and burned food
+     * 
+     * @return the restaurant's hazard event bus
+     */
+    public HazardEventBus getHazards() {
+        return hazards;
     }
 
     /**
-     * Remove all resolved conditions from the active list
+     * Find an active condition of a type near a position
+     * 
+     * @param type  the type of condition to search for
+     * @param x     the x position in tile coordinates
+     * @param y     the y position in tile coordinates
+     * @param range maximum distance on each axis, in tiles
+     * @return a matching condition, or null if there is none
      */
-    public void cleanupResolvedConditions() {
-        activeConditions.removeIf(c -> c.resolved);
+    public ActiveCondition findCondition(EnvironmentalCondition type, double x, double y, double range) {
+        return conditions.findWithin(type, x, y, range);
     }
 
     /**
-     * Get all active conditions of a specific type
+     * Find any active condition of a specific type
      * 
      * @param type the type of condition to search for
-     * @return list of matching active conditions
+     * @return an active condition, or null if there is none
      */
-    public List<ActiveCondition> getConditionsByType(EnvironmentalCondition type) {
-        List<ActiveCondition> result = new ArrayList<>();
-        for (ActiveCondition condition : activeConditions) {
-            if (condition.type == type && !condition.resolved) {
-                result.add(condition);
-            }
-        }
-        return result;
+    public ActiveCondition findCondition(EnvironmentalCondition type) {
+        return conditions.findAny(type);
+    }
+
+    /**
+     * Visit every active condition
+     * 
+     * @param action called once per active condition
+     */
+    public void forEachCondition(Consumer<ActiveCondition> action) {
+        conditions.forEach(action);
     }
 
     /**
@@ -234,6 +524,6 @@ public class Restaurant {
      * @return number of active conditions of that type
      */
     public int getConditionCount(EnvironmentalCondition type) {
-        return getConditionsByType(type).size();
+        return conditions.count(type);
     }
 }
@@ -0,0 +1,396 @@
+package underfried;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SimulationClock is the single source of time for the restaurant simulation.
+ * Agents use it for every piece of "work time" (cutting, cooking, washing,
+ * walking...) instead of calling Thread.sleep directly, so the same kitchen can
+ * run in real time, sped up, or as fast as the CPU allows.
+ *
+ * All values are in simulated milliseconds.
+ */
+public abstract class SimulationClock {
+
+    /**
+     * Get the current simulation time
+     *
+     * @return simulated milliseconds since the clock was created
+     */
+    public abstract long now();
+
+    /**
+     * Block the calling thread for an amount of simulated time
+     *
+     * @param millis simulated milliseconds to wait
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public abstract void sleep(long millis) throws InterruptedException;
+
+    /**
+     * Sleep for an amount of simulated time, restoring the interrupt flag
+     * instead of throwing if the thread is interrupted
+     *
+     * @param millis simulated milliseconds to wait
+     */
+    public void pause(long millis) {
+        try {
+            sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run an action once after an amount of simulated time, without blocking the
+     * caller. All timers of a clock share one timer thread, so the action must
+     * be short, e.g. flag something and wake an agent up.
+     *
+     * @param millis simulated milliseconds to wait
+     * @param action the action to run
+     */
+    public abstract void schedule(long millis, Runnable action);
+
+    /**
+     * Stop virtual time from advancing until releaseTime() is called, e.g. while
+     * the agents are still starting up. Has no effect on wall-clock based
+     * clocks.
+     */
+    public void holdTime() {
+    }
+
+    /**
+     * Undo a previous holdTime() call
+     */
+    public void releaseTime() {
+    }
+
+    /**
+     * Run a timer's action, keeping the timer thread alive if it fails
+     */
+    private static void runTimer(Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static Thread newTimerThread(Runnable task) {
+        Thread thread = new Thread(task, "clock-timer");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Get a short human readable description of the clock mode
+     *
+     * @return description such as "real-time" or "scaled x50"
+     */
+    public abstract String describe();
+
+    /**
+     * Clock that runs at wall-clock speed
+     */
+    public static SimulationClock realTime() {
+        return new ScaledClock(1.0);
+    }
+
+    /**
+     * Clock that runs factor times faster than wall-clock time
+     *
+     * @param factor speed-up factor, e.g. 50 means 50 simulated seconds per real
+     *               second
+     */
+    public static SimulationClock scaled(double factor) {
+        if (factor <= 0) {
+            throw new IllegalArgumentException("Clock scale factor must be positive: " + factor);
+        }
+        return new ScaledClock(factor);
+    }
+
+    /**
+     * Fully virtual clock. Time does not pass on its own: whenever every
+     * sleeping thread has settled, the clock jumps straight to the earliest
+     * pending wake-up time.
+     */
+    public static SimulationClock virtual() {
+        return new VirtualClock(VirtualClock.DEFAULT_SETTLE_MILLIS);
+    }
+
+    /**
+     * Fully virtual clock that waits longer for threads to settle before
+     * advancing, for hosts too busy to schedule the agents within the default
+     * settle time
+     *
+     * @param settleMillis real milliseconds without any activity after which
+     *                     time may advance
+     */
+    public static SimulationClock virtual(long settleMillis) {
+        if (settleMillis <= 0) {
+            throw new IllegalArgumentException("Clock settle time must be positive: " + settleMillis);
+        }
+        return new VirtualClock(settleMillis);
+    }
+
+    /**
+     * Create a clock from a command line specification
+     *
+     * @param spec "real", "scaled:FACTOR" (e.g. "scaled:50"), "virtual" or
+     *             "virtual:SETTLE_MILLIS" (e.g. "virtual:10")
+     * @return the matching clock
+     */
+    public static SimulationClock parse(String spec) {
+        if (spec == null || spec.isEmpty() || spec.equalsIgnoreCase("real")) {
+            return realTime();
+        }
+        if (spec.equalsIgnoreCase("virtual")) {
+            return virtual();
+        }
+        if (spec.toLowerCase().startsWith("virtual:")) {
+            try {
+                return virtual(Long.parseLong(spec.substring("virtual:".length())));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid clock settle time: " + spec);
+            }
+        }
+        if (spec.toLowerCase().startsWith("scaled:")) {
+            try {
+                return scaled(Double.parseDouble(spec.substring("scaled:".length())));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid clock scale factor: " + spec);
+            }
+        }
+        throw new IllegalArgumentException(
+                "Unknown clock mode: " + spec + " (expected real, scaled:N, virtual or virtual:N)");
+    }
+
+    /**
+     * Wall-clock based time, optionally sped up by a constant factor
+     */
+    private static class ScaledClock extends SimulationClock {
+        private final double factor;
+        private final long startNanos;
+        private final ScheduledExecutorService timers = Executors
+                .newSingleThreadScheduledExecutor(SimulationClock::newTimerThread);
+
+        ScaledClock(double factor) {
+            this.factor = factor;
+            this.startNanos = System.nanoTime();
+        }
+
+        @Override
+        public long now() {
+            return (long) ((System.nanoTime() - startNanos) / 1_000_000.0 * factor);
+        }
+
+        @Override
+        public void sleep(long millis) throws InterruptedException {
+            if (millis <= 0) {
+                return;
+            }
+            long realNanos = (long) (millis * 1_000_000.0 / factor);
+            Thread.sleep(realNanos / 1_000_000, (int) (realNanos % 1_000_000));
+        }
+
+        @Override
+        public void schedule(long millis, Runnable action) {
+            long realNanos = (long) (Math.max(0, millis) * 1_000_000.0 / factor);
+            timers.schedule(() -> runTimer(action), realNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String describe() {
+            return factor == 1.0 ? "real-time" : "scaled x" + factor;
+        }
+    }
+
+    /**
+     * Discrete-event clock. Sleeping threads register their wake-up time and a
+     * daemon thread advances the time to the earliest wake-up once no thread has
+     * gone to sleep or woken up for the settle time (2 ms of real time by
+     * default), and nobody is holding the time. Threads woken by an advance
+     * must have actually resumed before the next one, so a sleeper that is slow
+     * to get scheduled is not skipped over.
+     *
+     * Nothing tells the clock that a thread which is not sleeping on it is
+     * about to, e.g. an agent handling a message, so the settle time is a
+     * heuristic in real time. An agent that stays busy for longer than that
+     * without touching the clock can find time has moved on, so on a slow or
+     * overloaded host results depend on how fast it schedules the threads.
+     * Waits that must not be skipped hold the time instead (see holdTime()),
+     * and a longer settle time makes the rest less likely to be skipped too,
+     * at the cost of run time.
+     *
+     * Timers wait in a queue of their own instead of sleeping on a thread each.
+     * An advance hands the ones that are due to the timer thread, and counts
+     * them as woken until their action has run.
+     */
+    private static class VirtualClock extends SimulationClock {
+        static final long DEFAULT_SETTLE_MILLIS = 2;
+
+        private static class Timer {
+            final long wakeUp;
+            final long order; // Timers due at the same time run in the order they were scheduled
+            final Runnable action;
+
+            Timer(long wakeUp, long order, Runnable action) {
+                this.wakeUp = wakeUp;
+                this.order = order;
+                this.action = action;
+            }
+        }
+
+        private final long settleMillis;
+        private final PriorityQueue<Long> wakeUps = new PriorityQueue<>();
+        private final PriorityQueue<Timer> timers = new PriorityQueue<>(
+                Comparator.comparingLong((Timer timer) -> timer.wakeUp).thenComparingLong(timer -> timer.order));
+        private final Deque<Timer> dueTimers = new ArrayDeque<>();
+        private long scheduled = 0;
+        private volatile long now = 0;
+        private long activity = 0;
+        private int holds = 0;
+        private int awakened = 0; // Woken sleepers and due timers that have not run yet
+
+        VirtualClock(long settleMillis) {
+            this.settleMillis = settleMillis;
+            Thread advancer = new Thread(this::advanceLoop, "virtual-clock");
+            advancer.setDaemon(true);
+            advancer.start();
+            newTimerThread(this::timerLoop).start();
+        }
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public synchronized void sleep(long millis) throws InterruptedException {
+            if (millis <= 0) {
+                return;
+            }
+            Long wakeUp = now + millis;
+            wakeUps.add(wakeUp);
+            activity++;
+            notifyAll();
+            try {
+                while (now < wakeUp) {
+                    wait();
+                }
+            } finally {
+                wakeUps.remove(wakeUp);
+                if (wakeUp <= now && --awakened == 0) {
+                    notifyAll();
+                }
+                activity++;
+            }
+        }
+
+        @Override
+        public synchronized void schedule(long millis, Runnable action) {
+            Timer timer = new Timer(now + Math.max(0, millis), scheduled++, action);
+            if (timer.wakeUp <= now) {
+                dueTimers.add(timer);
+                awakened++;
+            } else {
+                timers.add(timer);
+            }
+            activity++;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void holdTime() {
+            holds++;
+        }
+
+        @Override
+        public synchronized void releaseTime() {
+            holds--;
+            activity++;
+            notifyAll();
+        }
+
+        @Override
+        public String describe() {
+            return settleMillis == DEFAULT_SETTLE_MILLIS ? "virtual" : "virtual, settle " + settleMillis + "ms";
+        }
+
+        private synchronized void advanceLoop() {
+            try {
+                while (true) {
+                    while (!canAdvance()) {
+                        wait();
+                    }
+
+                    // Let threads that are about to sleep register first
+                    long seen = activity;
+                    wait(settleMillis);
+                    if (seen != activity || !canAdvance()) {
+                        continue;
+                    }
+
+                    long next = Long.MAX_VALUE;
+                    if (!wakeUps.isEmpty()) {
+                        next = wakeUps.peek();
+                    }
+                    if (!timers.isEmpty()) {
+                        next = Math.min(next, timers.peek().wakeUp);
+                    }
+                    now = Math.max(now, next);
+                    for (long wakeUp : wakeUps) {
+                        if (wakeUp <= now) {
+                            awakened++;
+                        }
+                    }
+                    while (!timers.isEmpty() && timers.peek().wakeUp <= now) {
+                        dueTimers.add(timers.poll());
+                        awakened++;
+                    }
+                    notifyAll();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private boolean canAdvance() {
+            return (!wakeUps.isEmpty() || !timers.isEmpty()) && holds == 0 && awakened == 0;
+        }
+
+        /**
+         * Run due timers one after the other, outside of the clock's lock
+         */
+        private void timerLoop() {
+            try {
+                while (true) {
+                    Timer timer;
+                    synchronized (this) {
+                        while (dueTimers.isEmpty()) {
+                            wait();
+                        }
+                        timer = dueTimers.poll();
+                    }
+                    try {
+                        runTimer(timer.action);
+                    } finally {
+                        synchronized (this) {
+                            awakened--;
+                            activity++;
+                            notifyAll();
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
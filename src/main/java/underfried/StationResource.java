@@ -0,0 +1,209 @@
+package underfried;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A kitchen station with a limited number of slots (burners, cutting boards,
+ * sinks...) shared by all agents.
+ *
+ * Agents reserve a slot before working at the station and release it when
+ * done. Slots are handed out first come, first served, so a busy station forms
+ * a queue. Waiting in the queue never blocks a thread: the request is called
+ * back with its reservation when a slot is released. The time agents spend in
+ * that queue is measured on the simulation clock, which makes contention
+ * visible once there is more than one worker per role.
+ */
+public class StationResource {
+    private final KitchenStation station;
+    private final SimulationClock clock;
+    private int free; // Guarded by this
+    private final Queue<Request> waiting = new ArrayDeque<>(); // Guarded by this
+
+    /**
+     * An agent waiting in line for a slot
+     */
+    private static class Request {
+        final Consumer<Reservation> granted;
+        final long since;
+
+        Request(Consumer<Reservation> granted, long since) {
+            this.granted = granted;
+            this.since = since;
+        }
+    }
+
+    // Metrics
+    private final AtomicLong reservations = new AtomicLong();
+    private final AtomicLong totalWait = new AtomicLong();
+    private final AtomicLong maxWait = new AtomicLong();
+    private final AtomicLong lastWait = new AtomicLong();
+    private final AtomicInteger peakInUse = new AtomicInteger();
+
+    /**
+     * A reserved slot. Release it exactly once, typically in a finally block.
+     */
+    public class Reservation implements AutoCloseable {
+        private boolean released;
+
+        private Reservation() {
+        }
+
+        public KitchenStation getStation() {
+            return station;
+        }
+
+        /**
+         * Give the slot back to the station
+         */
+        public void release() {
+            synchronized (this) {
+                if (released) {
+                    throw new IllegalStateException(station.getDisplayName() + " slot released twice");
+                }
+                released = true;
+            }
+            handOver();
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+    }
+
+    public StationResource(KitchenStation station, SimulationClock clock) {
+        if (!station.isResource()) {
+            throw new IllegalArgumentException(station.getDisplayName() + " has no capacity to reserve");
+        }
+        this.station = station;
+        this.clock = clock;
+        this.free = station.getCapacity();
+    }
+
+    /**
+     * Reserve a slot, or get in line for one without waiting for it
+     *
+     * @param granted called with the reservation once there is a free slot:
+     *                right away if one is free now, otherwise on the thread
+     *                of whoever releases the slot
+     */
+    public void request(Consumer<Reservation> granted) {
+        Reservation reservation;
+        synchronized (this) {
+            if (free == 0 || !waiting.isEmpty()) {
+                waiting.add(new Request(granted, clock.now()));
+                return;
+            }
+            free--;
+            reservation = reserved(0);
+        }
+        granted.accept(reservation);
+    }
+
+    /**
+     * Reserve a slot only if one is free right now and nobody is waiting for
+     * it
+     *
+     * @return the reservation, or null if the station is full
+     */
+    public synchronized Reservation tryReserve() {
+        if (free == 0 || !waiting.isEmpty()) {
+            return null;
+        }
+        free--;
+        return reserved(0);
+    }
+
+    /**
+     * Give a released slot to the next agent in line, or back to the station
+     */
+    private void handOver() {
+        Request next;
+        Reservation reservation;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                free++;
+                return;
+            }
+            reservation = reserved(clock.now() - next.since);
+        }
+        next.granted.accept(reservation);
+    }
+
+    private Reservation reserved(long waitMillis) {
+        reservations.incrementAndGet();
+        totalWait.addAndGet(waitMillis);
+        maxWait.accumulateAndGet(waitMillis, Math::max);
+        lastWait.set(waitMillis);
+        peakInUse.accumulateAndGet(getInUse(), Math::max);
+        return new Reservation();
+    }
+
+    // ==================== Queries ====================
+
+    public KitchenStation getStation() {
+        return station;
+    }
+
+    public int getCapacity() {
+        return station.getCapacity();
+    }
+
+    /**
+     * @return number of slots currently reserved
+     */
+    public synchronized int getInUse() {
+        return station.getCapacity() - free;
+    }
+
+    /**
+     * @return number of agents waiting in line for a slot
+     */
+    public synchronized int getQueueLength() {
+        return waiting.size();
+    }
+
+    public int getPeakInUse() {
+        return peakInUse.get();
+    }
+
+    public long getReservationCount() {
+        return reservations.get();
+    }
+
+    /**
+     * @return average time waited for a slot in simulated ms, or 0 if nothing
+     *         was reserved yet
+     */
+    public long getAverageWaitMillis() {
+        long count = reservations.get();
+        return count == 0 ? 0 : totalWait.get() / count;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWait.get();
+    }
+
+    /**
+     * @return time the most recent reservation waited, in simulated ms
+     */
+    public long getLastWaitMillis() {
+        return lastWait.get();
+    }
+
+    /**
+     * Get a one-line summary of the station and its metrics
+     */
+    public String getSummary() {
+        return station.getDisplayName() + ": in use " + getInUse() + "/" + getCapacity() +
+                " (peak " + getPeakInUse() + "), queued: " + getQueueLength() +
+                ", reservations: " + getReservationCount() +
+                ", avg wait: " + getAverageWaitMillis() / 1000.0 + "s" +
+                ", max wait: " + getMaxWaitMillis() / 1000.0 + "s";
+    }
+}
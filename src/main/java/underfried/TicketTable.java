@@ -0,0 +1,226 @@
+package underfried;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * TicketTable follows every order from the moment the Waiter takes it until
+ * the dish is served.
+ *
+ * Each order gets a unique ticket ID that is carried in every message about
+ * it, so agents never have to match orders by meal name or by position in a
+ * queue. A ticket only moves forward through its stages and the time it
+ * reached each stage is recorded on the simulation clock:
+ *
+ * ordered -> sent to a chef -> split into tasks -> ingredients ready ->
+ * plated -> picked up -> served
+ *
+ * Served tickets are dropped from the table once their times are added to the
+ * metrics.
+ */
+public class TicketTable {
+
+    /**
+     * Stages of an order, in the order they are reached
+     */
+    public enum Stage {
+        ORDERED("Ordered"), // Taken at the table by the Waiter
+        SENT("Sent"), // Handed to a chef
+        SPLIT("Split"), // Split into ingredient tasks by the chef
+        INGREDIENTS_READY("Ingredients ready"), // All ingredients at the dish preparer
+        PLATED("Plated"), // On the counter
+        PICKED_UP("Picked up"), // Taken from the counter by a Runner
+        SERVED("Served"); // At the table
+
+        private final String displayName;
+
+        Stage(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * One order with the time it reached each stage
+     */
+    public static class Ticket {
+        public final long id;
+        public final String mealName;
+        private final long[] reachedAt = new long[Stage.values().length]; // -1 if not reached
+        private Stage stage = Stage.ORDERED;
+
+        private Ticket(long id, String mealName, long now) {
+            this.id = id;
+            this.mealName = mealName;
+            Arrays.fill(reachedAt, -1);
+            reachedAt[Stage.ORDERED.ordinal()] = now;
+        }
+
+        public synchronized Stage getStage() {
+            return stage;
+        }
+
+        /**
+         * @return simulated ms when the ticket reached a stage, or -1 if it
+         *         didn't (yet)
+         */
+        public synchronized long getTime(Stage stage) {
+            return reachedAt[stage.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            return mealName + " #" + id;
+        }
+    }
+
+    private final SimulationClock clock;
+    private final Map<Long, Ticket> open = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicIntegerArray inStage = new AtomicIntegerArray(Stage.values().length);
+
+    // Metrics, per stage: tickets that reached it and their time since ordered
+    private final AtomicIntegerArray reached = new AtomicIntegerArray(Stage.values().length);
+    private final AtomicLongArray totalSinceOrdered = new AtomicLongArray(Stage.values().length);
+    private final AtomicLongArray maxSinceOrdered = new AtomicLongArray(Stage.values().length);
+    private final AtomicInteger rejected = new AtomicInteger();
+
+    public TicketTable(SimulationClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Open a ticket for a new order
+     *
+     * @param mealName the ordered meal
+     * @return the new ticket, at stage ORDERED
+     */
+    public Ticket open(String mealName) {
+        Ticket ticket = new Ticket(nextId.getAndIncrement(), mealName, clock.now());
+        open.put(ticket.id, ticket);
+        inStage.incrementAndGet(Stage.ORDERED.ordinal());
+        reached.incrementAndGet(Stage.ORDERED.ordinal());
+        return ticket;
+    }
+
+    /**
+     * Count an order that couldn't be accepted
+     */
+    void reject() {
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * Look up an open ticket
+     *
+     * @return the ticket, or null if the ID is unknown or the order was already
+     *         served
+     */
+    public Ticket get(long id) {
+        return open.get(id);
+    }
+
+    /**
+     * Move a ticket forward to a stage and record the time. Stages in between
+     * that were skipped stay unrecorded.
+     *
+     * @param ticket the ticket
+     * @param stage  the stage it reached
+     * @return false if the ticket already is at or past that stage, e.g.
+     *         because another agent claimed it first
+     */
+    public boolean advance(Ticket ticket, Stage stage) {
+        long now = clock.now();
+        Stage previous;
+        long sinceOrdered;
+        synchronized (ticket) {
+            previous = ticket.stage;
+            if (stage.ordinal() <= previous.ordinal()) {
+                return false;
+            }
+            ticket.stage = stage;
+            ticket.reachedAt[stage.ordinal()] = now;
+            sinceOrdered = now - ticket.reachedAt[Stage.ORDERED.ordinal()];
+        }
+
+        inStage.decrementAndGet(previous.ordinal());
+        reached.incrementAndGet(stage.ordinal());
+        totalSinceOrdered.addAndGet(stage.ordinal(), sinceOrdered);
+        maxSinceOrdered.accumulateAndGet(stage.ordinal(), sinceOrdered, Math::max);
+        if (stage == Stage.SERVED) {
+            open.remove(ticket.id);
+        } else {
+            inStage.incrementAndGet(stage.ordinal());
+        }
+        return true;
+    }
+
+    // ==================== Queries ====================
+
+    /**
+     * @return number of open tickets currently at a stage
+     */
+    public int getCount(Stage stage) {
+        return inStage.get(stage.ordinal());
+    }
+
+    /**
+     * @return number of tickets that are open (not served yet)
+     */
+    public int getOpenCount() {
+        return open.size();
+    }
+
+    /**
+     * @return number of tickets that ever reached a stage
+     */
+    public int getReachedCount(Stage stage) {
+        return reached.get(stage.ordinal());
+    }
+
+    /**
+     * @return number of orders that couldn't be accepted
+     */
+    public int getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return average simulated ms from ordering to reaching a stage, or 0 if no
+     *         ticket reached it yet
+     */
+    public long getAverageMillisToReach(Stage stage) {
+        int count = reached.get(stage.ordinal());
+        return count == 0 ? 0 : totalSinceOrdered.get(stage.ordinal()) / count;
+    }
+
+    public long getMaxMillisToReach(Stage stage) {
+        return maxSinceOrdered.get(stage.ordinal());
+    }
+
+    /**
+     * Get a one-line summary of the tickets and their average time from
+     * ordering to each stage
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder("opened: " + getReachedCount(Stage.ORDERED) +
+                ", open: " + getOpenCount() + ", rejected: " + getRejectedCount());
+        for (Stage stage : Stage.values()) {
+            if (stage != Stage.ORDERED) {
+                summary.append(", ").append(stage.getDisplayName().toLowerCase()).append(": ")
+                        .append(getReachedCount(stage)).append(" (avg ")
+                        .append(getAverageMillisToReach(stage) / 1000.0).append("s, max ")
+                        .append(getMaxMillisToReach(stage) / 1000.0).append("s)");
+            }
+        }
+        return summary.toString();
+    }
+}
@@ -1,26 +1,116 @@
 package underfried.agents;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
 import jade.core.Agent;
-import jade.core.behaviours.CyclicBehaviour;
 import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
 import jade.core.AID;
 import underfried.Restaurant;
 import underfried.ChefKnowledge;
+import underfried.IngredientTaskQueue;
+import underfried.KitchenStation;
+import underfried.StationResource;
+import underfried.TicketTable;
+import underfried.ui.AgentSprite.AgentType;
 import underfried.ui.GameWindow;
 import underfried.IO;
 
 enum ChefState {
-    COUNTER,
-    DISH_PREPARER,
-    CUTTING,
-    COOKING,
+    COUNTER(KitchenStation.COUNTER),
+    DISH_PREPARER(KitchenStation.PREP),
+    CUTTING(KitchenStation.CUTTING),
+    COOKING(KitchenStation.COOKING);
+
+    final KitchenStation station;
+
+    ChefState(KitchenStation station) {
+        this.station = station;
+    }
 }
 
 public class Chef extends Agent {
+    // Conversation used to wake up idle chefs when there are tasks to steal
+    static final String TASKS_CONVERSATION_ID = "kitchen-tasks";
+    // Conversation a stove timer uses to tell the chef that a pot is done
+    static final String STOVE_CONVERSATION_ID = "stove";
+
+    // Number of pots a chef can have cooking at the same time, so one chef
+    // doesn't take every burner of the shared stove
+    private static final int MAX_POTS_PER_CHEF = 2;
+
+    // Most portions of one ingredient a chef prepares in one go (one pot)
+    private static final int MAX_BATCH = 4;
+    // Most extra cutting time (simulated ms) a batch may add before its first
+    // portion is ready, so batching doesn't starve the oldest order
+    private static final long BATCH_LATENCY_BUDGET = 10000;
+
+    /**
+     * A batch of one ingredient being prepared for one or more meals
+     */
+    private static class Job {
+        final List<IngredientTaskQueue.Task> batch;
+        final String ingredient;
+        final String status; // Status reported to the dish preparer when done
+        final boolean cut, cook; // Processing the ingredient needs
+        boolean failed; // Set if cutting failed, the remaining steps are skipped
+
+        Job(List<IngredientTaskQueue.Task> batch, String status, boolean cut, boolean cook) {
+            this.batch = batch;
+            this.ingredient = batch.get(0).ingredient;
+            this.status = status;
+            this.cut = cut;
+            this.cook = cook;
+        }
+    }
+
+    /**
+     * One step of the travel plan for the chef's current jobs
+     */
+    private static class PlannedStep {
+        final TaskPlanner.Action action;
+        final Job job;
+
+        PlannedStep(TaskPlanner.Action action, Job job) {
+            this.action = action;
+            this.job = job;
+        }
+    }
+
+    /**
+     * A batch of one ingredient on (or waiting for) one of the chef's burners
+     */
+    private static class Pot {
+        final List<IngredientTaskQueue.Task> batch;
+        final String ingredient;
+        final String status; // Status reported to the dish preparer when done
+        volatile boolean done; // Set by the stove timer
+        StationResource.Reservation burner;
+
+        Pot(List<IngredientTaskQueue.Task> batch, String status) {
+            this.batch = batch;
+            this.ingredient = batch.get(0).ingredient;
+            this.status = status;
+        }
+    }
+
     private Restaurant restaurant;
+    private String label; // Name used in logs and on the sprite, e.g. "Chef2"
+    private IngredientTaskQueue kitchenTasks;
     private ChefKnowledge chefKnowledge;
     private GameWindow gameWindow;
     private ChefState currentState = ChefState.COOKING;
+    private Walker walker;
+    private HazardAlerts fireAlerts;
+    private KitchenWorkflow work;
+    private boolean extinguishing;
+    private final List<Pot> onStove = new ArrayList<>();
+    private final Queue<Pot> waitingForStove = new ArrayDeque<>();
+    private final Queue<PlannedStep> plan = new ArrayDeque<>();
+    private int nextPreparer = 0; // Round-robin index into the preparer roster
 
     @Override
     protected void setup() {
@@ -34,397 +124,698 @@ public class Chef extends Agent {
             throw new IllegalArgumentException("Chef agent missing required arguments: Restaurant instance");
         }
 
-        IO.println("Chef", "Agent " + getAID().getName() + " is ready to cook!");
+        label = getLocalName().substring(0, 1).toUpperCase() + getLocalName().substring(1);
+        kitchenTasks = restaurant.getKitchenTasks();
+        kitchenTasks.register(getLocalName());
+
+        // Start at the cooking station, matching currentState
+        if (gameWindow != null) {
+            gameWindow.getGameState().addAgent(getLocalName(), label, AgentType.CHEF,
+                    KitchenStation.COOKING.getX(), KitchenStation.COOKING.getY());
+        }
+        walker = new Walker(getLocalName(), restaurant, gameWindow,
+                KitchenStation.COOKING.getX(), KitchenStation.COOKING.getY());
+
+        IO.println(label, "Agent " + getAID().getName() + " is ready to cook!");
         logToUI("Chef ready to cook!");
 
         // Initialize chef knowledge
         chefKnowledge = new ChefKnowledge(getAID().getLocalName());
 
-        IO.println("Chef", "Initialized with restaurant menu (" +
+        IO.println(label, "Initialized with restaurant menu (" +
                 restaurant.getMenuSize() + " dishes)");
-        IO.println("Chef", "Ready with cooking knowledge for " +
+        IO.println(label, "Ready with cooking knowledge for " +
                 chefKnowledge.getCookableIngredients().size()
                 + " ingredients");
 
+        // Get pushed fire alerts instead of polling the restaurant for them
+        fireAlerts = new HazardAlerts(this, restaurant, Restaurant.EnvironmentalCondition.FIRE);
+
         // Add behavior to handle orders from the restaurant queue
-        addBehaviour(new OrderHandlingBehaviour());
+        work = new KitchenWorkflow();
+        addBehaviour(work);
     }
 
     private void logToUI(String message) {
         if (gameWindow != null) {
-            gameWindow.appendLog("[Chef] " + message);
+            gameWindow.appendLog("[" + label + "] " + message);
         }
     }
 
     @Override
     protected void takeDown() {
-        IO.println("Chef", "Agent " + getAID().getName() + " is finishing work.");
+        IO.println(label, "Agent " + getAID().getName() + " is finishing work.");
     }
 
+    /**
+     * Walk to a station. Ends the current step, the steps queued after it run
+     * once we have arrived.
+     */
     protected void goTo(ChefState destination) {
         if (currentState == destination)
             return;
 
-        double targetX = 0, targetY = 0;
-
-        // Update UI with movement BEFORE changing state
-        if (gameWindow != null) {
-            switch (destination) {
-                case COUNTER:
-                    targetX = 9.5;
-                    targetY = 7.0;
-                    gameWindow.getGameState().moveAgent("chef", targetX, targetY);
-                    gameWindow.getGameState().updateAgentStatus("chef", "Going to counter");
-                    break;
-                case DISH_PREPARER:
-                    targetX = 7.5;
-                    targetY = 2.5;
-                    gameWindow.getGameState().moveAgent("chef", targetX, targetY);
-                    gameWindow.getGameState().updateAgentStatus("chef", "Going to dish preparer");
-                    break;
-                case COOKING:
-                    targetX = 2.0;
-                    targetY = 2.0;
-                    gameWindow.getGameState().moveAgent("chef", targetX, targetY);
-                    gameWindow.getGameState().updateAgentStatus("chef", "Going to cooking station");
-                    break;
-                case CUTTING:
-                    targetX = 5.0;
-                    targetY = 2.0;
-                    gameWindow.getGameState().moveAgent("chef", targetX, targetY);
-                    gameWindow.getGameState().updateAgentStatus("chef", "Going to cutting station");
-                    break;
-            }
-
-            // Wait until agent has arrived at destination
-            gameWindow.waitUntilArrived("chef", targetX, targetY);
+        switch (destination) {
+            case COUNTER:
+                walker.walkTo(work, KitchenStation.COUNTER, "Going to counter");
+                break;
+            case DISH_PREPARER:
+                walker.walkTo(work, KitchenStation.PREP, "Going to dish preparer");
+                break;
+            case COOKING:
+                walker.walkTo(work, KitchenStation.COOKING, "Going to cooking station");
+                break;
+            case CUTTING:
+                walker.walkTo(work, KitchenStation.CUTTING, "Going to cutting station");
+                break;
         }
 
         // Update state AFTER arriving at destination
-        currentState = destination;
+        work.then(() -> currentState = destination);
     }
 
     /**
-     * Check for fires in kitchen stations and handle them
-     * 
-     * @return true if a fire was found and being handled, false otherwise
+     * Put out a fire and walk back to what we were doing
      */
-    private boolean checkAndHandleFires() {
-        if (restaurant.getConditionCount(Restaurant.EnvironmentalCondition.FIRE) > 0) {
-            java.util.List<Restaurant.ActiveCondition> fires = restaurant
-                    .getConditionsByType(Restaurant.EnvironmentalCondition.FIRE);
-
-            for (Restaurant.ActiveCondition fire : fires) {
-                if (!fire.resolved) {
-                    IO.println("Chef", "FIRE DETECTED at (" + fire.x + ", " + fire.y + ")! Extinguishing...");
-                    logToUI("ALERT: Fire detected! Chef extinguishing fire...");
-
-                    // Move to fire location
-                    if (gameWindow != null) {
-                        gameWindow.getGameState().moveAgent("chef", fire.x, fire.y);
-                        gameWindow.getGameState().updateAgentStatus("chef", "Extinguishing fire!");
-                        gameWindow.waitUntilArrived("chef", fire.x, fire.y);
-                    }
+    private void extinguishFire(Restaurant.ActiveCondition fire) {
+        extinguishing = true;
+        double backX = walker.getX();
+        double backY = walker.getY();
 
-                    // Simulate extinguishing time (3 seconds)
-                    try {
-                        Thread.sleep(3000);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
+        IO.println(label, "FIRE DETECTED at (" + fire.x + ", " + fire.y + ")! Extinguishing...");
+        logToUI("ALERT: Fire detected! Chef extinguishing fire...");
 
-                    // Resolve the fire
-                    restaurant.resolveCondition(fire);
-                    IO.println("Chef", "✓ Fire extinguished successfully!");
-                    logToUI("Fire extinguished by Chef");
+        // Move to fire location
+        walker.walkTo(work, fire.x, fire.y, "Extinguishing fire!");
 
-                    if (gameWindow != null) {
-                        gameWindow.getGameState().updateAgentStatus("chef", "Fire extinguished");
-                    }
+        // Simulate extinguishing time (3 seconds)
+        work.then(() -> work.sleep(3000));
 
-                    return true; // Handled one fire, check again next cycle
-                }
+        work.then(() -> {
+            // Resolve the fire
+            restaurant.resolveCondition(fire);
+            IO.println(label, "✓ Fire extinguished successfully!");
+            logToUI("Fire extinguished by Chef");
+
+            if (gameWindow != null) {
+                gameWindow.getGameState().updateAgentStatus(getLocalName(), "Fire extinguished");
             }
-        }
-        return false;
+
+            walker.walkTo(work, backX, backY, null);
+        });
+        work.then(() -> extinguishing = false);
     }
 
     /**
-     * Check for and discard burned food at current location
+     * Check for and discard burned food at current location, one item per step
      */
     private void checkAndDiscardBurnedFood(double x, double y) {
-        java.util.List<Restaurant.ActiveCondition> burnedFoods = restaurant
-                .getConditionsByType(Restaurant.EnvironmentalCondition.BURNED_FOOD);
-
-        for (Restaurant.ActiveCondition burnedFood : burnedFoods) {
-            if (!burnedFood.resolved &&
-                    Math.abs(burnedFood.x - x) < 1.5 &&
-                    Math.abs(burnedFood.y - y) < 1.5) {
-
-                IO.println("Chef", "Discarding burned " + burnedFood.affectedItem);
-                logToUI("Discarded burned food: " + burnedFood.affectedItem);
-                restaurant.resolveCondition(burnedFood);
-
-                try {
-                    Thread.sleep(1000); // 1 second to discard
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
+        Restaurant.ActiveCondition burnedFood = restaurant.findCondition(
+                Restaurant.EnvironmentalCondition.BURNED_FOOD, x, y, 1.5);
+        if (burnedFood == null || !restaurant.claimCondition(burnedFood)) {
+            return; // None left, or someone else is already discarding it
         }
+
+        IO.println(label, "Discarding burned " + burnedFood.affectedItem);
+        logToUI("Discarded burned food: " + burnedFood.affectedItem);
+        restaurant.resolveCondition(burnedFood);
+
+        work.sleep(1000); // 1 second to discard
+        work.then(() -> checkAndDiscardBurnedFood(x, y));
     }
 
-    private class OrderHandlingBehaviour extends CyclicBehaviour {
+    private class KitchenWorkflow extends StepBehaviour {
+        // Orders and wake-ups, hazard alerts are taken in beforeStep()
+        private final MessageTemplate incoming = MessageTemplate.and(HazardAlerts.NOT_HAZARD,
+                StepBehaviour.NOT_WAKE);
+
+        KitchenWorkflow() {
+            super(Chef.this, restaurant.getClock());
+        }
+
         @Override
-        public void action() {
-            // First priority: Check for fires near cooking/cutting stations
-            if (checkAndHandleFires()) {
-                return; // Handle fire first, then continue to orders next cycle
+        protected void beforeStep() {
+            // Hazard alerts only wake us up, the fires themselves are queued
+            while (receive(HazardAlerts.TEMPLATE) != null) {
+                // Discard, the queued fires are claimed below
             }
 
-            // Receive orders via ACL messages
-            ACLMessage msg = receive();
-            if (msg != null) {
-                // Move to counter to receive the order
-                goTo(ChefState.COUNTER);
+            // First priority: fires near cooking/cutting stations, between any
+            // two steps
+            Restaurant.ActiveCondition fire;
+            if (!extinguishing && (fire = fireAlerts.claimNext()) != null) {
+                then(() -> extinguishFire(fire));
+            }
+        }
 
-                // Parse the order content
-                String orderContent = msg.getContent();
-                if (orderContent.startsWith("RAT_ELIMINATED")) {
-                    block();
+        @Override
+        protected boolean idle() {
+            // Receive orders via ACL messages. Picking them up means a walk to the
+            // counter, so don't break off a travel plan for it and take all waiting
+            // orders in one trip
+            if (plan.isEmpty()) {
+                boolean received = false;
+                List<String> orders = new ArrayList<>();
+                ACLMessage msg;
+                while ((msg = receive(incoming)) != null) {
+                    received = true;
+                    if (msg.getConversationId() == null) {
+                        orders.add(msg.getContent());
+                    }
+                    // Other conversations (tasks available, stove timers) only wake us up
+                }
+                if (!orders.isEmpty()) {
+                    handleOrders(orders);
+                }
+                if (received) {
+                    return true;
                 }
+            }
 
-                IO.println("Chef", "Received order: " + orderContent);
-
-                if (orderContent != null && !orderContent.trim().isEmpty()) {
-                    // Validate against shared state
-                    int expectedOrders = restaurant.getPendingOrderCount();
-                    IO.println("Chef", "[VALIDATION] Pending orders in queue: " + expectedOrders);
-
-                    // Process orders from message
-                    // Parse order format: "PLATE1\nPLATE2\n..." where each meal is on a new line
-                    String[] meals = orderContent.split("\n");
-                    IO.println("Chef", "Processing " + meals.length + " order(s) from message");
-
-                    // Process each meal in the order
-                    for (String meal : meals) {
-                        meal = meal.trim();
-                        if (!meal.isEmpty()) {
-                            // Validate this order exists in shared state
-                            String queuedOrder = restaurant.getNextOrder();
-                            if (queuedOrder != null && queuedOrder.equalsIgnoreCase(meal)) {
-                                IO.println("Chef", "[VALIDATION] Order '" + meal +
-                                        "' matches queued order '" + queuedOrder + "'");
-                                processMeal(meal);
-                            } else if (queuedOrder != null) {
-                                IO.println("Chef", "[VALIDATION] WARNING - Message order '" + meal +
-                                        "' doesn't match queued order '" + queuedOrder + "'");
-                                // Process anyway but log discrepancy
-                                processMeal(meal);
-                            } else {
-                                IO.println("Chef", "[VALIDATION] WARNING - No queued order found for '" +
-                                        meal + "' but processing from message");
-                                processMeal(meal);
-                            }
-                        }
-                    }
+            // Finished pots come first so nothing sits on the stove for long
+            if (emptyStove()) {
+                return true;
+            }
 
-                    IO.println("Chef", "[VALIDATION] Remaining orders in queue: " +
-                            restaurant.getPendingOrderCount());
-                } else {
-                    IO.println("Chef", "ERROR - Received empty order message");
+            // One planned step at a time, so fires and finished pots are noticed
+            // between steps
+            if (!plan.isEmpty()) {
+                runStep(plan.poll());
+                return true;
+            }
+
+            // Work on our own tasks first, then help the other chefs. Don't pick up
+            // more cooking work than the stove can take right now
+            if (waitingForStove.isEmpty()) {
+                IngredientTaskQueue.Task task = kitchenTasks.next(getLocalName());
+                if (task != null) {
+                    planTasks(task);
+                    return true; // Start on the plan, run again
                 }
+            }
+
+            return false; // Woken by orders, stolen work or a stove timer
+        }
+    }
+
+    private void handleOrders(List<String> orderMessages) {
+        // Move to counter to receive the orders
+        goTo(ChefState.COUNTER);
+        work.then(() -> {
+            for (String orderContent : orderMessages) {
+                handleOrder(orderContent);
+            }
+        });
+    }
+
+    private void handleOrder(String orderContent) {
+        // Parse the order content
+        if (orderContent == null || orderContent.trim().isEmpty()) {
+            IO.println(label, "ERROR - Received empty order message");
+            return;
+        }
+
+        IO.println(label, "Received order: " + orderContent);
+
+        // Validate against shared state
+        int expectedOrders = restaurant.getPendingOrderCount();
+        IO.println(label, "[VALIDATION] Pending orders in queue: " + expectedOrders);
+
+        // Process orders from message
+        // Parse order format: "TICKET:PLATE\nTICKET:PLATE\n..." with one order per line
+        String[] orders = orderContent.split("\n");
+        IO.println(label, "Processing " + orders.length + " order(s) from message");
+
+        // Split each meal in the order into ingredient tasks
+        int taskCount = 0;
+        for (String order : orders) {
+            order = order.trim();
+            if (order.isEmpty()) {
+                continue;
+            }
+
+            String[] parts = order.split(":");
+            long ticketId;
+            try {
+                ticketId = parts.length == 2 ? Long.parseLong(parts[0]) : -1;
+            } catch (NumberFormatException e) {
+                ticketId = -1;
+            }
+            if (ticketId < 0) {
+                IO.println(label, "ERROR - Invalid order format: " + order);
+                continue;
+            }
+
+            // Claim the ticket in shared state, so no order is prepared twice
+            TicketTable.Ticket ticket = restaurant.claimOrder(ticketId);
+            if (ticket == null) {
+                IO.println(label, "[VALIDATION] WARNING - Ticket #" + ticketId +
+                        " is unknown or already claimed, skipping '" + parts[1] + "'");
+            } else if (!ticket.mealName.equalsIgnoreCase(parts[1])) {
+                IO.println(label, "[VALIDATION] WARNING - Message order '" + parts[1] +
+                        "' doesn't match ticket " + ticket + ", preparing the ticket's meal");
+                taskCount += submitMeal(ticket);
             } else {
-                block();
+                IO.println(label, "[VALIDATION] Claimed ticket " + ticket);
+                taskCount += submitMeal(ticket);
             }
         }
+
+        IO.println(label, "[VALIDATION] Remaining orders in queue: " +
+                restaurant.getPendingOrderCount());
+
+        if (taskCount > 0) {
+            wakeOtherChefs(taskCount);
+        }
     }
 
-    private void processMeal(String mealName) {
-        IO.println("Chef", "Starting to prepare ingredients for meal: " + mealName);
+    /**
+     * Split a meal into one task per ingredient on our own task deque
+     * 
+     * @return number of tasks submitted
+     */
+    private int submitMeal(TicketTable.Ticket ticket) {
+        String mealName = ticket.mealName;
+        IO.println(label, "Starting to prepare ingredients for meal: " + ticket);
         logToUI("Processing order: " + mealName);
 
         if (gameWindow != null) {
-            gameWindow.getGameState().updateAgentStatus("chef", "Preparing " + mealName);
+            gameWindow.getGameState().updateAgentStatus(getLocalName(), "Preparing " + mealName);
         }
 
         // Get the recipe from the restaurant menu
         String[] ingredients = restaurant.getRecipe(mealName);
         if (ingredients == null) {
-            IO.println("Chef", "ERROR - Unknown meal: " + mealName);
-            IO.println("Chef", "Available meals: " + restaurant.getAvailableDishes());
+            IO.println(label, "ERROR - Unknown meal: " + mealName);
+            IO.println(label, "Available meals: " + restaurant.getAvailableDishes());
             logToUI("ERROR: Unknown meal - " + mealName);
-            return;
+            return 0;
         }
 
-        // Process each ingredient for the meal independently
+        // Each ingredient is processed independently, by whichever chef gets to it
+        List<String> tasks = new ArrayList<>();
         for (String ingredient : ingredients) {
-            ingredient = ingredient.trim().toLowerCase();
-            processIngredient(ingredient, mealName);
+            tasks.add(ingredient.trim().toLowerCase());
+        }
+        kitchenTasks.submit(getLocalName(), ticket.id, mealName, tasks, estimateCost(mealName, tasks));
+        return tasks.size();
+    }
 
-            // Check for fires after finishing each ingredient
-            if (checkAndHandleFires()) {
-                IO.println("Chef", "Returning to finish meal: " + mealName + " after handling fire");
-                logToUI("Returning to complete: " + mealName);
+    /**
+     * Estimate how long preparing a meal takes, used by the order scheduler:
+     * cutting and cooking time of every ingredient plus the walk from the dish
+     * preparer to the stations it needs and back
+     * 
+     * @return estimated simulated milliseconds
+     */
+    private long estimateCost(String mealName, List<String> ingredients) {
+        long cost = 0;
+        for (String ingredient : ingredients) {
+            KitchenStation at = KitchenStation.PREP;
+            if (chefKnowledge.needsCutting(ingredient) && chefKnowledge.canCut(ingredient)) {
+                cost += chefKnowledge.getCuttingTime(ingredient) * 1000L;
+                cost += Walker.travelMillis(at, KitchenStation.CUTTING);
+                at = KitchenStation.CUTTING;
+            }
+            if (chefKnowledge.shouldCookForDish(ingredient, mealName) && chefKnowledge.canCook(ingredient)) {
+                cost += chefKnowledge.getCookingTime(ingredient) * 1000L;
+                cost += Walker.travelMillis(at, KitchenStation.COOKING);
+                at = KitchenStation.COOKING;
+            }
+            cost += Walker.travelMillis(at, KitchenStation.PREP);
+        }
+        return cost;
+    }
+
+    /**
+     * Let the other chefs know there is work they can steal
+     */
+    private void wakeOtherChefs(int taskCount) {
+        ACLMessage wakeUp = new ACLMessage(ACLMessage.INFORM);
+        wakeUp.setConversationId(TASKS_CONVERSATION_ID);
+        wakeUp.setContent("TASKS_AVAILABLE:" + taskCount);
+        for (String chef : restaurant.getStaff(Restaurant.StaffRole.CHEF)) {
+            if (!chef.equals(getLocalName())) {
+                wakeUp.addReceiver(new AID(chef, AID.ISLOCALNAME));
+            }
+        }
+        if (wakeUp.getAllReceiver().hasNext()) {
+            send(wakeUp);
+        }
+    }
+
+    /**
+     * Take the rest of a task's order from our own deque and plan cutting,
+     * cooking and delivering all of its ingredients with as little walking as
+     * possible. Queued tasks for the same ingredient that need the same
+     * processing are batched with each of them, within the latency budget.
+     */
+    private void planTasks(IngredientTaskQueue.Task task) {
+        List<IngredientTaskQueue.Task> tasks = new ArrayList<>();
+        tasks.add(task);
+        tasks.addAll(kitchenTasks.takeMatching(getLocalName(), other -> other.order == task.order, Integer.MAX_VALUE));
+
+        List<Job> jobs = new ArrayList<>();
+        for (IngredientTaskQueue.Task next : tasks) {
+            Job job = prepareJob(next);
+            if (job != null) {
+                jobs.add(job);
+            }
+        }
+        if (jobs.isEmpty()) {
+            return;
+        }
+
+        long[] cutMillis = new long[jobs.size()];
+        boolean[] cook = new boolean[jobs.size()];
+        for (int i = 0; i < jobs.size(); i++) {
+            Job job = jobs.get(i);
+            if (job.cut) {
+                cutMillis[i] = chefKnowledge.getCuttingTime(job.ingredient) * 1000L * job.batch.size();
             }
+            cook[i] = job.cook;
+        }
+
+        TaskPlanner.Plan travelPlan = TaskPlanner.plan(currentState.station, cutMillis, cook);
+        for (TaskPlanner.Step step : travelPlan.steps) {
+            plan.add(new PlannedStep(step.action, jobs.get(step.job)));
         }
+        kitchenTasks.recordTravelPlan(travelPlan.travelMillis, travelPlan.naiveTravelMillis);
 
-        IO.println("Chef", "Finished processing all ingredients for meal: " + mealName);
-        logToUI("Completed: " + mealName);
+        IO.println(label, "Planned " + travelPlan.steps.size() + " steps for " + task.mealName
+                + " #" + task.order.ticketId + ": " + travelPlan.travelMillis / 1000.0 + "s of walking instead of "
+                + travelPlan.naiveTravelMillis / 1000.0 + "s, saved " + travelPlan.getSavedMillis() / 1000.0 + "s");
     }
 
-    private void processIngredient(String ingredient, String mealName) {
-        IO.println("Chef", "Processing ingredient " + ingredient + " for meal " + mealName);
+    /**
+     * Batch a task with matching queued tasks and work out what processing the
+     * ingredient needs
+     *
+     * @return the job, or null if the ingredient can't be prepared
+     */
+    private Job prepareJob(IngredientTaskQueue.Task task) {
+        String ingredient = task.ingredient;
+        String mealName = task.mealName;
 
         // Check what processing this ingredient actually needs
         boolean needsCutting = chefKnowledge.needsCutting(ingredient);
         boolean needsCooking = chefKnowledge.needsCooking(ingredient);
         boolean shouldCook = chefKnowledge.shouldCookForDish(ingredient, mealName);
 
-        boolean cutSuccess = true;
-        boolean cookSuccess = true;
+        List<IngredientTaskQueue.Task> batch = new ArrayList<>();
+        batch.add(task);
+        batch.addAll(kitchenTasks.takeMatching(getLocalName(),
+                other -> other.ingredient.equals(ingredient)
+                        && chefKnowledge.shouldCookForDish(ingredient, other.mealName) == shouldCook,
+                maxBatchSize(ingredient, needsCutting) - 1));
+
+        IO.println(label, "Processing ingredient " + ingredient + " for "
+                + (batch.size() == 1 ? "meal " + mealName : batch.size() + " meals: " + mealNames(batch)));
+
+        if (needsCutting && !chefKnowledge.canCut(ingredient)) {
+            IO.println(label, "ERROR - Don't know how to cut " + ingredient);
+            IO.println(label, "Available ingredients for cutting: " + chefKnowledge.getCuttableIngredients());
+            IO.println(label, "Failed to cut " + ingredient + " for " + mealNames(batch));
+            return null;
+        } else if (!needsCutting) {
+            IO.println(label, ingredient + " doesn't need cutting for this dish");
+        }
 
-        // Cut the ingredient if needed
-        if (needsCutting) {
-            cutSuccess = cutIngredient(ingredient);
-            if (!cutSuccess) {
-                IO.println("Chef", "Failed to cut " + ingredient + " for meal " + mealName);
-                return; // Don't proceed to cooking if cutting failed
+        if (needsCooking && shouldCook) {
+            if (!chefKnowledge.canCook(ingredient)) {
+                IO.println(label, "ERROR - Don't know how to cook " + ingredient);
+                IO.println(label, "Available ingredients for cooking: " + chefKnowledge.getCookableIngredients());
+                IO.println(label, "Failed to cook " + ingredient + " for " + mealNames(batch));
+                return null;
             }
+        } else if (needsCooking) {
+            IO.println(label, "Using " + ingredient + " raw for " + mealNames(batch));
         } else {
-            IO.println("Chef", ingredient + " doesn't need cutting for this dish");
+            IO.println(label, ingredient + " doesn't need cooking for this dish");
         }
 
-        // Cook the ingredient if needed and if cutting was successful (or not required)
-        if (cutSuccess && needsCooking && shouldCook) {
-            cookSuccess = cookIngredient(ingredient);
-            if (!cookSuccess) {
-                IO.println("Chef", "Failed to cook " + ingredient + " for meal " + mealName);
-                return; // Don't notify if cooking failed
-            }
-        } else if (needsCooking && !shouldCook) {
-            IO.println("Chef", "Using " + ingredient + " raw for " + mealName);
-        } else if (!needsCooking) {
-            IO.println("Chef", ingredient + " doesn't need cooking for this dish");
+        String status = (needsCutting && shouldCook) ? "CUT_AND_COOKED"
+                : needsCutting ? "CUT" : shouldCook ? "COOKED" : "RAW";
+        return new Job(batch, status, needsCutting, needsCooking && shouldCook);
+    }
+
+    /**
+     * Carry out one step of the plan: cut a job's ingredient, put it on the
+     * stove without waiting for it, or deliver it to the dish preparer
+     */
+    private void runStep(PlannedStep step) {
+        Job job = step.job;
+        if (job.failed) {
+            return;
         }
 
-        // Notify dish preparer about this specific ingredient
-        if (cutSuccess && cookSuccess) {
-            String status = (needsCutting && shouldCook) ? "CUT_AND_COOKED"
-                    : needsCutting ? "CUT" : shouldCook ? "COOKED" : "RAW";
-            notifyDishPreparer(status, ingredient, mealName);
+        switch (step.action) {
+            case CUT:
+                if (!cutIngredient(job.ingredient, job.batch.size())) {
+                    IO.println(label, "Failed to cut " + job.ingredient + " for " + mealNames(job.batch));
+                    job.failed = true; // Don't proceed to cooking if cutting failed
+                }
+                break;
+            case STOVE:
+                waitingForStove.add(new Pot(job.batch, job.status));
+                fillStove();
+                break;
+            case DELIVER:
+                // Notify dish preparer about this specific ingredient, once per meal
+                notifyDishPreparer(job.batch, job.status);
+                break;
         }
     }
 
-    private boolean cookIngredient(String ingredient) {
-        if (!chefKnowledge.canCook(ingredient)) {
-            IO.println("Chef", "ERROR - Don't know how to cook " + ingredient);
-            IO.println("Chef", "Available ingredients for cooking: " + chefKnowledge.getCookableIngredients());
-            return false;
+    /**
+     * Largest batch of one ingredient that still fits the latency budget. Every
+     * extra portion has to be cut before the first one can be delivered, while
+     * a pot cooks all of its portions at once.
+     */
+    private int maxBatchSize(String ingredient, boolean needsCutting) {
+        if (!needsCutting || !chefKnowledge.canCut(ingredient)) {
+            return MAX_BATCH;
+        }
+        long cutMillis = chefKnowledge.getCuttingTime(ingredient) * 1000L;
+        return (int) Math.max(1, Math.min(MAX_BATCH, BATCH_LATENCY_BUDGET / cutMillis));
+    }
+
+    private static String mealNames(List<IngredientTaskQueue.Task> batch) {
+        List<String> names = new ArrayList<>();
+        for (IngredientTaskQueue.Task task : batch) {
+            names.add(task.mealName + " #" + task.order.ticketId);
+        }
+        return String.join(", ", names);
+    }
+
+    /**
+     * Put ingredients that are waiting to be cooked on free burners of the
+     * shared stove. Each pot gets a timer on the simulation clock that wakes us
+     * up when it is done, so we can cut or deliver other ingredients in the
+     * meantime.
+     */
+    private void fillStove() {
+        if (waitingForStove.isEmpty() || onStove.size() >= MAX_POTS_PER_CHEF) {
+            return;
         }
 
         // Move to cooking station
-        goTo(ChefState.COOKING);
+        if (currentState != ChefState.COOKING) {
+            goTo(ChefState.COOKING);
+            work.then(this::fillStove);
+            return;
+        }
+
+        // Get a burner. If our own pots are cooking we come back when one of
+        // them is done, otherwise there's nothing better to do than queue
+        Pot pot = waitingForStove.peek();
+        StationResource stove = restaurant.getStation(KitchenStation.COOKING);
+        pot.burner = stove.tryReserve();
+        if (pot.burner == null) {
+            if (!onStove.isEmpty()) {
+                return;
+            }
+            IO.println(label, "All burners busy, waiting for one to free up");
+            if (gameWindow != null) {
+                gameWindow.getGameState().updateAgentStatus(getLocalName(), "Waiting for a burner");
+            }
+            work.reserve(stove, burner -> pot.burner = burner);
+        }
+        waitingForStove.poll();
 
         // Check for and discard any burned food at this station first
-        checkAndDiscardBurnedFood(2.0, 2.0);
+        work.then(() -> checkAndDiscardBurnedFood(KitchenStation.COOKING.getX(), KitchenStation.COOKING.getY()));
+        work.then(() -> {
+            startCooking(pot);
+            fillStove();
+        });
+    }
 
+    private void startCooking(Pot pot) {
+        String ingredient = pot.ingredient;
         Integer cookTime = chefKnowledge.getCookingTime(ingredient);
         String method = chefKnowledge.getCookingMethod(ingredient);
 
-        IO.println("Chef", "Starting to cook " + ingredient + " using " + method +
+        IO.println(label, "Starting to cook " + pot.batch.size() + " " + ingredient + " using " + method +
                 " (will take " + cookTime + " seconds)");
 
         if (gameWindow != null) {
-            gameWindow.getGameState().updateAgentStatus("chef", "Cooking " + ingredient);
+            gameWindow.getGameState().updateAgentStatus(getLocalName(), "Cooking " + ingredient);
         }
 
-        // Simulate cooking time with chance to burn (10% chance)
-        try {
-            Thread.sleep(cookTime * 1000); // Convert to milliseconds
-
-            // Check if food burned (random chance)
-            if (Math.random() < 0.10) { // 10% chance to burn
-                IO.println("Chef", "WARNING - " + ingredient + " has BURNED!");
-                logToUI("Food burned: " + ingredient);
-
-                // Add burned food condition at cooking station
-                if (gameWindow != null) {
-                    gameWindow.getGameState().addBurnedFood(2.0, 2.0, ingredient);
-                    gameWindow.getGameState().updateAgentStatus("chef", "Burned " + ingredient + "!");
-                }
+        onStove.add(pot);
+        restaurant.getClock().schedule(cookTime * 1000, () -> {
+            // Runs on the timer thread, so only flag the pot and wake us up
+            pot.done = true;
+            ACLMessage ready = new ACLMessage(ACLMessage.INFORM);
+            ready.addReceiver(getAID());
+            ready.setConversationId(STOVE_CONVERSATION_ID);
+            ready.setContent("STOVE_DONE:" + ingredient + ":" + mealNames(pot.batch));
+            postMessage(ready);
+        });
+    }
 
-                return false; // Cooking failed due to burning
+    /**
+     * Take finished pots off the stove and deliver them
+     *
+     * @return true if any pot was finished
+     */
+    private boolean emptyStove() {
+        boolean emptied = false;
+        for (Pot pot : new ArrayList<>(onStove)) {
+            if (!pot.done) {
+                continue;
             }
-        } catch (InterruptedException e) {
-            IO.println("Chef", "ERROR - Cooking interrupted for " + ingredient);
-            Thread.currentThread().interrupt(); // Restore interrupted status
-            return false;
+            onStove.remove(pot);
+            emptied = true;
+
+            // Come back to the cooking station for it, one pot after the other
+            work.then(() -> {
+                goTo(ChefState.COOKING);
+                work.then(() -> takeOffStove(pot));
+            });
         }
 
-        IO.println("Chef", "SUCCESS - Finished cooking " + ingredient + " using " + method);
+        // Burners are free again
+        if (emptied) {
+            work.then(this::fillStove);
+        }
+        return emptied;
+    }
 
-        // Check for fires immediately after finishing cooking
-        checkAndHandleFires();
+    /**
+     * Free a finished pot's burner and deliver it, we're at the stove
+     */
+    private void takeOffStove(Pot pot) {
+        String ingredient = pot.ingredient;
+        pot.burner.release();
+
+        // Check if food burned (10% chance)
+        if (Math.random() < 0.10) {
+            IO.println(label, "WARNING - " + ingredient + " has BURNED!");
+            logToUI("Food burned: " + ingredient);
+
+            // Add burned food condition at cooking station (published as a hazard
+            // event, with or without UI)
+            restaurant.addBurnedFood(KitchenStation.COOKING.getX(), KitchenStation.COOKING.getY(), ingredient);
+            if (gameWindow != null) {
+                gameWindow.getGameState().updateAgentStatus(getLocalName(), "Burned " + ingredient + "!");
+            }
+            // Nothing to deliver, every order in the pot needs the ingredient again
+            IO.println(label, "Failed to cook " + ingredient + " for " + mealNames(pot.batch)
+                    + ", preparing it again");
+            kitchenTasks.redo(getLocalName(), pot.batch);
+            return;
+        }
 
-        return true;
+        IO.println(label, "SUCCESS - Finished cooking " + ingredient + " using "
+                + chefKnowledge.getCookingMethod(ingredient));
+        notifyDishPreparer(pot.batch, pot.status);
     }
 
-    private boolean cutIngredient(String ingredient) {
+    /**
+     * Queue the steps for cutting an ingredient
+     *
+     * @return false if we can't cut it
+     */
+    private boolean cutIngredient(String ingredient, int portions) {
         if (!chefKnowledge.canCut(ingredient)) {
-            IO.println("Chef", "ERROR - Don't know how to cut " + ingredient);
-            IO.println("Chef", "Available ingredients for cutting: " + chefKnowledge.getCuttableIngredients());
+            IO.println(label, "ERROR - Don't know how to cut " + ingredient);
+            IO.println(label, "Available ingredients for cutting: " + chefKnowledge.getCuttableIngredients());
             return false;
         }
 
         // Move to cutting station
         goTo(ChefState.CUTTING);
+        work.then(() -> startCutting(ingredient, portions));
+        return true;
+    }
 
-        Integer cutTime = chefKnowledge.getCuttingTime(ingredient);
+    private void startCutting(String ingredient, int portions) {
+        // Each portion takes the full cutting time, but we only walk here once
+        int cutTime = chefKnowledge.getCuttingTime(ingredient) * portions;
 
-        IO.println("Chef", "Starting to cut " + ingredient + " (will take " + cutTime + " seconds)");
+        IO.println(label, "Starting to cut " + (portions > 1 ? portions + " " : "") + ingredient
+                + " (will take " + cutTime + " seconds)");
 
         if (gameWindow != null) {
-            gameWindow.getGameState().updateAgentStatus("chef", "Cutting " + ingredient);
+            gameWindow.getGameState().updateAgentStatus(getLocalName(), "Cutting " + ingredient);
         }
 
-        // Simulate cutting time
-        try {
-            Thread.sleep(cutTime * 1000); // Convert to milliseconds
-        } catch (InterruptedException e) {
-            IO.println("Chef", "ERROR - Cutting interrupted for " + ingredient);
-            Thread.currentThread().interrupt(); // Restore interrupted status
-            return false;
-        }
-
-        IO.println("Chef", "SUCCESS - Finished cutting " + ingredient);
-
-        // Check for fires immediately after finishing cutting
-        checkAndHandleFires();
-
-        return true;
+        // Simulate cutting time on one of the shared cutting boards. Fires are
+        // checked for right after, before the next step
+        StationResource.Reservation[] board = new StationResource.Reservation[1];
+        work.reserve(restaurant.getStation(KitchenStation.CUTTING), reservation -> board[0] = reservation);
+        work.then(() -> work.sleep(cutTime * 1000)); // Convert to milliseconds
+        work.then(() -> {
+            board[0].release();
+            IO.println(label, "SUCCESS - Finished cutting " + ingredient);
+        });
     }
 
-    private void notifyDishPreparer(String status, String ingredient, String mealName) {
+    private void notifyDishPreparer(List<IngredientTaskQueue.Task> batch, String status) {
         // Move to dish preparer to deliver the ingredient
         goTo(ChefState.DISH_PREPARER);
+        work.then(() -> handOver(batch, status));
+    }
+
+    private void handOver(List<IngredientTaskQueue.Task> batch, String status) {
+        for (IngredientTaskQueue.Task task : batch) {
+            String ingredient = task.ingredient;
+            String mealName = task.mealName;
+
+            // Create message to notify dish preparer
+            ACLMessage notification = new ACLMessage(ACLMessage.INFORM);
 
-        // Create message to notify dish preparer
-        ACLMessage notification = new ACLMessage(ACLMessage.INFORM);
+            // Set recipient (Dish Preparer agent), taking turns between all of them.
+            // Any preparer can take any ingredient, they share the AssemblyBoard
+            AID preparadorAID = new AID(nextPreparer(), AID.ISLOCALNAME);
+            notification.addReceiver(preparadorAID);
 
-        // Set recipient (Dish Preparer agent)
-        AID preparadorAID = new AID("dishPreparer", AID.ISLOCALNAME);
-        notification.addReceiver(preparadorAID);
+            // Set message content with ingredient status and meal name
+            // With the format: "INGREDIENT_READY:STATUS:INGREDIENT:MEAL:TICKET"
+            // e.g. "INGREDIENT_READY:COOKED:meat:super_meat_boy:17"
+            notification.setContent("INGREDIENT_READY:" + status + ":" + ingredient + ":" + mealName + ":"
+                    + task.order.ticketId);
 
-        // Set message content with ingredient status and meal name
-        // With the format: "INGREDIENT_READY:STATUS:INGREDIENT:MEAL"
-        // e.g. "INGREDIENT_READY:COOKED:meat:super_meat_boy"
-        notification.setContent("INGREDIENT_READY:" + status + ":" + ingredient + ":" + mealName);
+            // Send notification
+            send(notification);
 
-        // Send notification
-        send(notification);
+            IO.println(label, "Notified dish preparer that " + ingredient + " is "
+                    + status.toLowerCase().replace("_", " ") + " for meal " + mealName + " #" + task.order.ticketId);
+            kitchenTasks.complete(task, restaurant.getClock().now());
+        }
+    }
 
-        IO.println("Chef", "Notified dish preparer that " + ingredient + " is "
-                + status.toLowerCase().replace("_", " ") + " for meal " + mealName);
+    /**
+     * Pick the dish preparer to deliver the next ingredient to, taking turns
+     * between all preparers
+     */
+    private String nextPreparer() {
+        List<String> preparers = restaurant.getStaff(Restaurant.StaffRole.DISH_PREPARER);
+        if (preparers.isEmpty()) {
+            return "dishPreparer";
+        }
+        return preparers.get(nextPreparer++ % preparers.size());
     }
 }
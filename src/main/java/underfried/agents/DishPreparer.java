@@ -1,17 +1,16 @@
 package underfried.agents;
 
 import jade.core.Agent;
-import jade.core.behaviours.CyclicBehaviour;
 import jade.lang.acl.ACLMessage;
 import jade.core.AID;
+import underfried.KitchenStation;
+import underfried.RecipeMasks;
 import underfried.Restaurant;
+import underfried.StationResource;
+import underfried.TicketTable;
+import underfried.ui.AgentSprite.AgentType;
 import underfried.ui.GameWindow;
 import underfried.IO;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
-import java.util.HashSet;
-import java.util.Arrays;
 
 enum DishPreparerState {
     COUNTER,
@@ -19,13 +18,15 @@ enum DishPreparerState {
 }
 
 public class DishPreparer extends Agent {
+    // Simulated ms between tries to place a dish on a full counter
+    private static final long COUNTER_RETRY_MILLIS = 1000;
+
     private Restaurant restaurant;
+    private String label; // Name used in logs, e.g. "DishPreparer2"
     private GameWindow gameWindow;
     private DishPreparerState currentState = DishPreparerState.DISH_PREPARING_AREA;
-
-    // Track ingredients ready for each meal
-    // Key: meal name, Value: Set of prepared ingredients
-    private Map<String, Set<String>> readyIngredients;
+    private Walker walker;
+    private PreparingWorkflow work;
 
     @Override
     protected void setup() {
@@ -39,130 +40,163 @@ public class DishPreparer extends Agent {
             throw new IllegalArgumentException("DishPreparer agent missing required arguments: Restaurant instance");
         }
 
-        IO.println("DishPreparer", "Agent " + getAID().getName() + " is ready to prepare dishes!");
-        logToUI("DishPreparer ready to assemble dishes!");
+        label = getLocalName().substring(0, 1).toUpperCase() + getLocalName().substring(1);
+
+        // Start at the prep area, matching currentState
+        if (gameWindow != null) {
+            // Extra preparers are numbered like their agent, e.g. "Preparer2"
+            gameWindow.getGameState().addAgent(getLocalName(),
+                    "Preparer" + getLocalName().substring("dishPreparer".length()), AgentType.DISH_PREPARER,
+                    KitchenStation.PREP.getX(), KitchenStation.PREP.getY());
+        }
+        walker = new Walker(getLocalName(), restaurant, gameWindow,
+                KitchenStation.PREP.getX(), KitchenStation.PREP.getY());
 
-        // Initialize state
-        readyIngredients = new HashMap<>();
+        IO.println(label, "Agent " + getAID().getName() + " is ready to prepare dishes!");
+        logToUI("DishPreparer ready to assemble dishes!");
 
-        IO.println("DishPreparer", "Initialized with restaurant menu (" +
+        IO.println(label, "Initialized with restaurant menu (" +
                 restaurant.getMenuSize() + " dishes)");
-        IO.println("DishPreparer", "Using restaurant plate management - Clean plates available: " +
-                restaurant.cleanPlates);
+        IO.println(label, "Using restaurant plate management - Clean plates available: " +
+                restaurant.getPlates().getClean());
 
         // Add behavior to handle incoming messages
-        addBehaviour(new MessageHandlingBehaviour());
+        work = new PreparingWorkflow();
+        addBehaviour(work);
     }
 
     private void logToUI(String message) {
         if (gameWindow != null) {
-            gameWindow.appendLog("[DishPreparer] " + message);
+            gameWindow.appendLog("[" + label + "] " + message);
         }
     }
 
     @Override
     protected void takeDown() {
-        IO.println("DishPreparer", "Agent " + getAID().getName() + " is finishing work.");
-        IO.println("DishPreparer", "Final stats - Ready dishes: " + restaurant.readyDishes.size() +
-                " (" + restaurant.readyDishes + "), Clean plates: " + restaurant.cleanPlates);
+        IO.println(label, "Agent " + getAID().getName() + " is finishing work.");
+        IO.println(label, "Final stats - Ready dishes: " + restaurant.getReadyDishCount() +
+                ", Plates: " + restaurant.getPlates().getSummary());
     }
 
+    /**
+     * Walk to a place. Ends the current step, the steps queued after it run
+     * once we have arrived.
+     */
     protected void goTo(DishPreparerState destination) {
         if (currentState == destination)
             return;
 
-        double targetX = 0, targetY = 0;
-
-        // Update UI with movement BEFORE changing state
-        if (gameWindow != null) {
-            switch (destination) {
-                case COUNTER:
-                    targetX = 9.5;
-                    targetY = 7.0;
-                    gameWindow.getGameState().moveAgent("dishPreparer", targetX, targetY);
-                    gameWindow.getGameState().updateAgentStatus("dishPreparer", "Going to counter");
-                    break;
-                case DISH_PREPARING_AREA:
-                    targetX = 7.5;
-                    targetY = 2.5;
-                    gameWindow.getGameState().moveAgent("dishPreparer", targetX, targetY);
-                    gameWindow.getGameState().updateAgentStatus("dishPreparer", "Going to prep area");
-                    break;
-            }
-
-            // Wait until agent has arrived at destination
-            gameWindow.waitUntilArrived("dishPreparer", targetX, targetY);
+        switch (destination) {
+            case COUNTER:
+                walker.walkTo(work, KitchenStation.COUNTER, "Going to counter");
+                break;
+            case DISH_PREPARING_AREA:
+                walker.walkTo(work, KitchenStation.PREP, "Going to prep area");
+                break;
         }
 
         // Update state AFTER arriving at destination
-        currentState = destination;
+        work.then(() -> currentState = destination);
     }
 
-    private class MessageHandlingBehaviour extends CyclicBehaviour {
+    private class PreparingWorkflow extends StepBehaviour {
+        PreparingWorkflow() {
+            super(DishPreparer.this, restaurant.getClock());
+        }
+
         @Override
-        public void action() {
-            ACLMessage msg = receive();
-            if (msg != null) {
-                String content = msg.getContent();
-                IO.println("DishPreparer", "Received message: " + content);
-
-                if (content != null && !content.trim().isEmpty()) {
-                    processMessage(content, msg.getSender());
-                } else {
-                    IO.println("DishPreparer", "Received empty message from " + msg.getSender().getName());
-                }
+        protected boolean idle() {
+            ACLMessage msg = receive(StepBehaviour.NOT_WAKE);
+            if (msg == null) {
+                return false;
+            }
+
+            String content = msg.getContent();
+            IO.println(label, "Received message: " + content);
+
+            if (content != null && !content.trim().isEmpty()) {
+                processMessage(content, msg.getSender());
             } else {
-                block();
+                IO.println(label, "Received empty message from " + msg.getSender().getName());
             }
+            return true;
         }
     }
 
     private void processMessage(String content, AID sender) {
         try {
             if (content.startsWith("INGREDIENT_READY:")) {
-                handleIngredientReady(content, sender);
+                handleIngredientReady(content);
             } else if (content.startsWith("CLEAN_PLATES:")) {
                 handleCleanPlates(content, sender);
+            } else if (content.startsWith("PLATES_AVAILABLE:")) {
+                // Another preparer received clean plates for more parked dishes
+                // than it can assemble at once
+                assembleParkedDishes();
             } else {
-                IO.println("DishPreparer", "Unknown message format: " + content);
+                IO.println(label, "Unknown message format: " + content);
             }
         } catch (Exception e) {
-            IO.println("DishPreparer", "ERROR - Exception processing message: " + e.getMessage());
+            IO.println(label, "ERROR - Exception processing message: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
-    private void handleIngredientReady(String content, AID sender) {
+    private void handleIngredientReady(String content) {
         // Move to prep area to receive the ingredient
         goTo(DishPreparerState.DISH_PREPARING_AREA);
+        work.then(() -> receiveIngredient(content));
+    }
 
-        // Parse message format: "INGREDIENT_READY:STATUS:INGREDIENT:MEAL"
-        // e.g. "INGREDIENT_READY:COOKED:meat:super_meat_boy"
+    private void receiveIngredient(String content) {
+        // Parse message format: "INGREDIENT_READY:STATUS:INGREDIENT:MEAL:TICKET"
+        // e.g. "INGREDIENT_READY:COOKED:meat:super_meat_boy:17"
         String[] parts = content.split(":");
-        if (parts.length != 4) {
-            IO.println("DishPreparer", "ERROR - Invalid ingredient ready format: " + content);
+        if (parts.length != 5) {
+            IO.println(label, "ERROR - Invalid ingredient ready format: " + content);
             return;
         }
 
         String status = parts[1];
         String ingredient = parts[2];
         String mealName = parts[3];
+        TicketTable.Ticket ticket;
+        try {
+            ticket = restaurant.getTickets().get(Long.parseLong(parts[4]));
+        } catch (NumberFormatException e) {
+            IO.println(label, "ERROR - Invalid ticket ID: " + parts[4]);
+            return;
+        }
+        if (ticket == null || !ticket.mealName.equals(mealName)) {
+            IO.println(label, "ERROR - No open ticket #" + parts[4] + " for " + mealName);
+            return;
+        }
 
-        IO.println("DishPreparer", "Received " + status.toLowerCase().replace("_", " ") +
-                " " + ingredient + " for meal " + mealName);
+        IO.println(label, "Received " + status.toLowerCase().replace("_", " ") +
+                " " + ingredient + " for meal " + ticket);
 
         if (gameWindow != null) {
-            gameWindow.getGameState().updateAgentStatus("dishPreparer", "Received " + ingredient + " for " + mealName);
+            gameWindow.getGameState().updateAgentStatus(getLocalName(), "Received " + ingredient + " for " + ticket);
         }
 
-        // Add ingredient to ready list for this meal
-        if (!readyIngredients.containsKey(mealName)) {
-            readyIngredients.put(mealName, new HashSet<>());
+        RecipeMasks masks = restaurant.getRecipeMasks();
+        long bit = masks.bitOf(ingredient);
+        if (bit == 0) {
+            IO.println(label, "ERROR - Unknown ingredient: " + ingredient);
+            return;
+        }
+        long recipe = masks.maskOf(mealName);
+        if (recipe == 0) {
+            IO.println(label, "ERROR - Unknown meal: " + mealName);
+            return;
         }
-        readyIngredients.get(mealName).add(ingredient);
 
-        // Check if all ingredients for this meal are ready
-        checkIfDishComplete(mealName);
+        // Add ingredient to the delivered mask of this order, which may have
+        // ingredients at other preparers too
+        long missing = restaurant.getAssemblyBoard().deliver(ticket.id, recipe, bit);
+
+        // Check if all ingredients for this order are ready
+        checkIfDishComplete(ticket, missing);
     }
 
     private void handleCleanPlates(String content, AID sender) {
@@ -170,120 +204,150 @@ public class DishPreparer extends Agent {
         // e.g. "CLEAN_PLATES:3"
         String[] parts = content.split(":");
         if (parts.length != 2) {
-            IO.println("DishPreparer", "ERROR - Invalid clean plates format: " + content);
+            IO.println(label, "ERROR - Invalid clean plates format: " + content);
             return;
         }
 
         try {
             int plateCount = Integer.parseInt(parts[1]);
-            restaurant.cleanPlates += plateCount;
-            IO.println("DishPreparer", "Received " + plateCount + " clean plates from " +
-                    sender.getName() + ". Total available: " + restaurant.cleanPlates);
+            restaurant.getPlates().finishWashing(plateCount);
+            IO.println(label, "Received " + plateCount + " clean plates from " +
+                    sender.getName() + ". Total available: " + restaurant.getPlates().getClean());
 
             if (gameWindow != null) {
-                gameWindow.getGameState().updateAgentStatus("dishPreparer", "Received " + plateCount + " clean plates");
+                gameWindow.getGameState().updateAgentStatus(getLocalName(), "Received " + plateCount + " clean plates");
             }
 
-            // Try to complete pending dishes now that we have plates
-            checkPendingDishes();
+            // Assemble the dishes that were waiting for these plates, with help
+            // from the other preparers if there are more than one
+            if (restaurant.getPlateWait().size() > 1) {
+                wakeOtherPreparers(plateCount);
+            }
+            assembleParkedDishes();
         } catch (NumberFormatException e) {
-            IO.println("DishPreparer", "ERROR - Invalid plate count: " + parts[1]);
+            IO.println(label, "ERROR - Invalid plate count: " + parts[1]);
         }
     }
 
-    private void checkIfDishComplete(String mealName) {
-        // Get required ingredients for this meal
-        String[] requiredIngredients = restaurant.getRecipe(mealName);
-        if (requiredIngredients == null) {
-            IO.println("DishPreparer", "ERROR - Unknown meal: " + mealName);
-            return;
+    /**
+     * Let the other preparers know there are clean plates for parked dishes
+     */
+    private void wakeOtherPreparers(int plateCount) {
+        ACLMessage wakeUp = new ACLMessage(ACLMessage.INFORM);
+        wakeUp.setContent("PLATES_AVAILABLE:" + plateCount);
+        for (String preparer : restaurant.getStaff(Restaurant.StaffRole.DISH_PREPARER)) {
+            if (!preparer.equals(getLocalName())) {
+                wakeUp.addReceiver(new AID(preparer, AID.ISLOCALNAME));
+            }
         }
+        if (wakeUp.getAllReceiver().hasNext()) {
+            send(wakeUp);
+        }
+    }
 
-        Set<String> required = new HashSet<>(Arrays.asList(requiredIngredients));
-        Set<String> ready = readyIngredients.get(mealName);
-
-        if (ready != null && ready.containsAll(required)) {
-            IO.println("DishPreparer", "All ingredients ready for " + mealName + "!");
-            IO.println("DishPreparer", "Required: " + required);
-            IO.println("DishPreparer", "Ready: " + ready);
+    /**
+     * Plate an order once all of its ingredients are ready, or park it until
+     * there is a clean plate
+     *
+     * @param missing mask of the ingredients the order is still missing
+     */
+    private void checkIfDishComplete(TicketTable.Ticket ticket, long missing) {
+        if (missing == 0) {
+            restaurant.getTickets().advance(ticket, TicketTable.Stage.INGREDIENTS_READY);
+            IO.println(label, "All ingredients ready for " + ticket + "!");
+            IO.println(label, "Required: " + String.join(", ", restaurant.getRecipe(ticket.mealName)));
 
             if (gameWindow != null) {
-                gameWindow.getGameState().updateAgentStatus("dishPreparer", "Ready to assemble " + mealName);
+                gameWindow.getGameState().updateAgentStatus(getLocalName(), "Ready to assemble " + ticket.mealName);
             }
 
-            assembleDish(mealName);
-        } else {
-            Set<String> missing = new HashSet<>(required);
-            if (ready != null) {
-                missing.removeAll(ready);
+            if (restaurant.getPlateWait().takeOrPark(ticket)) {
+                assembleDish(ticket);
+            } else {
+                IO.println(label, "[VALIDATION] ✗ Cannot assemble " + ticket + " - no clean plates available!");
+                IO.println(label, "[VALIDATION] Parked until the dishwasher provides clean plates (" +
+                        restaurant.getPlateWait().size() + " waiting)");
+                logToUI("Waiting for clean plates to assemble " + ticket.mealName);
             }
-            IO.println("DishPreparer", "Still waiting for ingredients for " + mealName +
-                    ". Missing: " + missing);
+        } else {
+            IO.println(label, "Still waiting for ingredients for " + ticket +
+                    ". Missing: " + restaurant.getRecipeMasks().namesOf(missing));
 
             if (gameWindow != null) {
-                gameWindow.getGameState().updateAgentStatus("dishPreparer",
-                        "Waiting for " + missing.size() + " ingredient(s)");
+                gameWindow.getGameState().updateAgentStatus(getLocalName(),
+                        "Waiting for " + Long.bitCount(missing) + " ingredient(s)");
             }
         }
     }
 
-    private void assembleDish(String mealName) {
+    /**
+     * Assemble a dish on a clean plate that was already taken for it (clean ->
+     * taken). Queues the steps for it, the dish is on the counter once they
+     * have run.
+     */
+    private void assembleDish(TicketTable.Ticket ticket) {
+        String mealName = ticket.mealName;
         // Validate shared state before assembling
-        IO.println("DishPreparer", "[VALIDATION] Checking resources for " + mealName);
-        IO.println("DishPreparer", "[VALIDATION] Clean plates available: " + restaurant.cleanPlates);
-        IO.println("DishPreparer", "[VALIDATION] Current ready dishes: " + restaurant.getReadyDishCount());
-
-        if (restaurant.cleanPlates <= 0) {
-            IO.println("DishPreparer", "[VALIDATION] ✗ Cannot assemble " + mealName + " - no clean plates available!");
-            IO.println("DishPreparer", "[VALIDATION] Waiting for dishwasher to provide clean plates");
-            logToUI("Waiting for clean plates to assemble " + mealName);
-            return;
-        }
+        IO.println(label, "[VALIDATION] Plate taken for " + mealName + ", clean plates left: " +
+                restaurant.getPlates().getClean());
+        IO.println(label, "[VALIDATION] Current ready dishes: " + restaurant.getReadyDishCount());
 
-        IO.println("DishPreparer", "[VALIDATION] ✓ Resources validated. Starting to assemble dish: " + mealName);
+        IO.println(label, "[VALIDATION] ✓ Resources validated. Starting to assemble dish: " + ticket);
         logToUI("Assembling dish: " + mealName);
 
         if (gameWindow != null) {
-            gameWindow.getGameState().updateAgentStatus("dishPreparer", "Assembling " + mealName);
+            gameWindow.getGameState().updateAgentStatus(getLocalName(), "Assembling " + mealName);
         }
 
         int assemblyTime = restaurant.getRecipe(mealName).length * 2000; // 2 seconds per ingredient
 
-        // Simulate dish assembly time
-        try {
-            Thread.sleep(assemblyTime);
-        } catch (InterruptedException e) {
-            IO.println("DishPreparer", "ERROR - Dish assembly interrupted for " + mealName);
-            Thread.currentThread().interrupt();
+        // Simulate dish assembly time at a plating spot
+        StationResource.Reservation[] spot = new StationResource.Reservation[1];
+        work.reserve(restaurant.getStation(KitchenStation.PREP), reservation -> spot[0] = reservation);
+        work.then(() -> work.sleep(assemblyTime));
+        work.then(() -> {
+            spot[0].release();
+            placeOnCounter(ticket);
+        });
+    }
+
+    private void placeOnCounter(TicketTable.Ticket ticket) {
+        // Add the plated dish to the ready dishes queue (updates shared state)
+        if (!restaurant.addReadyDish(ticket)) {
+            // Keep holding the plated dish until a runner makes room
+            IO.println(label, "Counter is full, waiting to place " + ticket);
+            work.sleep(COUNTER_RETRY_MILLIS);
+            work.then(() -> placeOnCounter(ticket));
             return;
         }
 
-        // Use a clean plate and add to ready dishes queue (updates shared state)
-        restaurant.cleanPlates--;
-        restaurant.readyDishes.add(mealName);
-
         // Move to counter to place the completed dish
         goTo(DishPreparerState.COUNTER);
-        logToUI("Dish ready: " + mealName + " (placed on counter)");
+        work.then(() -> reportPlaced(ticket));
+    }
+
+    private void reportPlaced(TicketTable.Ticket ticket) {
+        String mealName = ticket.mealName;
+        logToUI("Dish ready: " + ticket + " (placed on counter)");
 
         if (gameWindow != null) {
-            gameWindow.getGameState().updateAgentStatus("dishPreparer", "Placed " + mealName + " on counter");
+            gameWindow.getGameState().updateAgentStatus(getLocalName(), "Placed " + mealName + " on counter");
         }
 
-        // Remove ingredients from ready list since they're now used
-        readyIngredients.remove(mealName);
-
-        IO.println("DishPreparer", "SUCCESS - Completed dish: " + mealName);
-        IO.println("DishPreparer", "[VALIDATION] Updated shared state - Clean plates: " + restaurant.cleanPlates);
-        IO.println("DishPreparer",
-                "[VALIDATION] Updated shared state - Ready dishes: " + restaurant.readyDishes.size() +
-                        " (" + restaurant.readyDishes + ")");
+        IO.println(label, "SUCCESS - Completed dish: " + ticket);
+        IO.println(label, "[VALIDATION] Updated shared state - Clean plates: " +
+                restaurant.getPlates().getClean());
+        IO.println(label,
+                "[VALIDATION] Updated shared state - Ready dishes: " + restaurant.getReadyDishCount());
     }
 
-    private void checkPendingDishes() {
-        // Check all pending meals to see if any can now be completed
-        for (String mealName : new HashSet<>(readyIngredients.keySet())) {
-            checkIfDishComplete(mealName);
+    private void assembleParkedDishes() {
+        // One dish per clean plate, oldest order first. Unpark the next one
+        // only once this one is done, so the other preparers can take some
+        TicketTable.Ticket ticket = restaurant.getPlateWait().unpark();
+        if (ticket != null) {
+            assembleDish(ticket);
+            work.then(this::assembleParkedDishes);
         }
     }
 }
\ No newline at end of file
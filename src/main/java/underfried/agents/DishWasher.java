@@ -1,13 +1,19 @@
 package underfried.agents;
 
 import jade.core.Agent;
-import jade.core.behaviours.CyclicBehaviour;
 import jade.lang.acl.ACLMessage;
 import jade.core.AID;
+import underfried.KitchenStation;
+import underfried.MailboxStats;
+import underfried.PlateInventory;
 import underfried.Restaurant;
+import underfried.StationResource;
+import underfried.ui.AgentSprite.AgentType;
 import underfried.ui.GameWindow;
 import underfried.IO;
 
+import java.util.List;
+
 enum DishWasherState {
     WASHING_STATION,
     DELIVERING_CLEAN_PLATES,
@@ -15,12 +21,40 @@ enum DishWasherState {
 }
 
 public class DishWasher extends Agent {
+    // Conversation ID of the timer messages that wake us up when the sink is done
+    private static final String SINK_CONVERSATION_ID = "sink";
+
+    /**
+     * A batch of plates washing in our sink
+     */
+    private static class Batch {
+        final int plates;
+        final StationResource.Reservation sink;
+        volatile boolean done; // Set by the sink timer
+
+        Batch(int plates, StationResource.Reservation sink) {
+            this.plates = plates;
+            this.sink = sink;
+        }
+    }
+
     private Restaurant restaurant;
+    private String label; // Name used in logs, e.g. "DishWasher2"
     private GameWindow gameWindow;
     private int washingCapacity = 5; // Maximum plates that can be washed at once
-    private int washingTimePerPlate = 2000; // 2 seconds per plate in milliseconds
+    private int minBatch = 1; // Plates washed at once when clean plates run out
+    private int sinkFillTime = 1000; // 1 second to fill the sink, once per batch
+    private int washingTimePerPlate = 1800; // 1.8 seconds per plate in milliseconds
 
     private DishWasherState currentState = DishWasherState.WASHING_STATION;
+    private Walker walker;
+    private WashingWorkflow work;
+    private int nextPreparer = 0; // Round-robin index into the preparer roster
+    private Batch inSink; // Batch washing right now, or null
+    private int cleanPlatesCarried; // Washed plates not delivered yet
+    private MailboxStats mailbox;
+    private int dirtyNotices; // DIRTY_PLATES received since our last trip to the pile
+    private int dirtyPlatesReported; // Plates those notifications announced
 
     @Override
     protected void setup() {
@@ -34,160 +68,306 @@ public class DishWasher extends Agent {
             throw new IllegalArgumentException("DishWasher agent missing required arguments: Restaurant instance");
         }
 
-        IO.println("DishWasher", "Agent " + getAID().getName() + " is ready to wash dishes!");
-        IO.println("DishWasher", "Washing capacity: " + washingCapacity + " plates at once");
-        IO.println("DishWasher", "Washing time: " + (washingTimePerPlate / 1000) + " seconds per plate");
-        IO.println("DishWasher", "Current dirty plates in restaurant: " + restaurant.dirtyPlates);
+        label = getLocalName().substring(0, 1).toUpperCase() + getLocalName().substring(1);
+
+        // Start at the washing station, matching currentState
+        if (gameWindow != null) {
+            // Extra washers are numbered like their agent, e.g. "Washer2"
+            gameWindow.getGameState().addAgent(getLocalName(),
+                    "Washer" + getLocalName().substring("dishWasher".length()), AgentType.DISH_WASHER,
+                    KitchenStation.WASHING.getX(), KitchenStation.WASHING.getY());
+        }
+        walker = new Walker(getLocalName(), restaurant, gameWindow,
+                KitchenStation.WASHING.getX(), KitchenStation.WASHING.getY());
+
+        IO.println(label, "Agent " + getAID().getName() + " is ready to wash dishes!");
+        IO.println(label, "Washing capacity: " + minBatch + " to " + washingCapacity + " plates at once");
+        IO.println(label, "Washing time: " + (sinkFillTime / 1000.0) + " seconds per batch plus " +
+                (washingTimePerPlate / 1000.0) + " seconds per plate");
+        IO.println(label, "Current dirty plates in restaurant: " + restaurant.getPlates().getDirty());
         logToUI("DishWasher ready to clean plates!");
 
-        addBehaviour(new DishWashingBehaviour());
+        mailbox = restaurant.getMailboxStats(getLocalName());
+        work = new WashingWorkflow();
+        addBehaviour(work);
     }
 
     private void logToUI(String message) {
         if (gameWindow != null) {
-            gameWindow.appendLog("[DishWasher] " + message);
+            gameWindow.appendLog("[" + label + "] " + message);
         }
     }
 
     @Override
     protected void takeDown() {
-        IO.println("DishWasher", "Agent " + getAID().getName() + " is finishing work.");
-        IO.println("DishWasher", "Final stats - Dirty plates remaining: " + restaurant.dirtyPlates +
-                ", Clean plates available: " + restaurant.cleanPlates);
+        IO.println(label, "Agent " + getAID().getName() + " is finishing work.");
+        IO.println(label, "Final stats - Plates: " + restaurant.getPlates().getSummary());
+        IO.println(label, "Final stats - Mailbox: " + mailbox.getSummary());
     }
 
-    private class DishWashingBehaviour extends CyclicBehaviour {
+    private class WashingWorkflow extends StepBehaviour {
+        WashingWorkflow() {
+            super(DishWasher.this, restaurant.getClock());
+        }
+
+        @Override
+        protected void beforeStep() {
+            // Read the mailbox between any two steps, not only when idle, so no
+            // notification waits for more than one step
+            readMailbox();
+        }
+
         @Override
-        public void action() {
-            // Check for incoming messages first
-            ACLMessage msg = receive();
-            if (msg != null) {
-                String content = msg.getContent();
-                IO.println("DishWasher", "Received message: " + content);
-
-                if (content != null && !content.trim().isEmpty()) {
-                    processMessage(content, msg.getSender());
-                } else {
-                    IO.println("DishWasher", "Received empty message from " + msg.getSender().getName());
-                }
+        protected boolean idle() {
+            // However many notifications piled up, one trip to the pile takes
+            // all the dirty plates they announced
+            if (dirtyNotices > 0) {
+                fetchDirtyPlates();
+                return true;
             }
 
-            // Check if there are dirty plates to wash
-            if (restaurant.dirtyPlates > 0) {
-                washDirtyPlates();
-            } else {
-                if (msg == null) {
-                    block();
-                }
+            // Take washed plates out of the sink and load the next batch right
+            // away, so the sink keeps washing while we deliver
+            if (emptySink() || fillSink()) {
+                return true;
+            }
+
+            if (cleanPlatesCarried > 0) {
+                sendCleanPlatesToDishPreparer(cleanPlatesCarried);
+                cleanPlatesCarried = 0;
+                return true;
             }
+
+            // Woken up by the next DIRTY_PLATES or by the sink timer
+            return false;
         }
     }
 
-    private void processMessage(String content, AID sender) {
-        try {
-            if (content.startsWith("DIRTY_PLATES:")) {
-                goTo(DishWasherState.TAKING_DIRTY_PLATES);
+    /**
+     * Take every message waiting in the mailbox. Notifications are only
+     * counted here, the work they ask for is done once for all of them.
+     */
+    private void readMailbox() {
+        mailbox.checked(getCurQueueSize());
+
+        ACLMessage msg;
+        while ((msg = receive(StepBehaviour.NOT_WAKE)) != null) {
+            String content = msg.getContent();
+            IO.println(label, "Received message: " + content);
 
-                gameWindow.wait(500);
-                goTo(DishWasherState.WASHING_STATION);
+            if (content != null && !content.trim().isEmpty()) {
+                processMessage(content, msg);
+            } else {
+                IO.println(label, "Received empty message from " + msg.getSender().getName());
+            }
+        }
+    }
 
-                handleDirtyPlatesNotification(content, sender);
+    private void processMessage(String content, ACLMessage msg) {
+        try {
+            if (content.startsWith("SINK_DONE:")) {
+                // The batch was flagged done by the timer, emptySink picks it up
+                return;
+            } else if (content.startsWith("DIRTY_PLATES:")) {
+                handleDirtyPlatesNotification(content, msg);
             } else {
-                IO.println("DishWasher", "Unknown message format: " + content);
+                IO.println(label, "Unknown message format: " + content);
             }
         } catch (Exception e) {
-            IO.println("DishWasher", "ERROR - Exception processing message: " + e.getMessage());
+            IO.println(label, "ERROR - Exception processing message: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
-    private void handleDirtyPlatesNotification(String content, AID sender) {
+    private void handleDirtyPlatesNotification(String content, ACLMessage msg) {
         // Parse message format: "DIRTY_PLATES:COUNT"
         // e.g. "DIRTY_PLATES:3"
         String[] parts = content.split(":");
         if (parts.length != 2) {
-            IO.println("DishWasher", "ERROR - Invalid dirty plates format: " + content);
+            IO.println(label, "ERROR - Invalid dirty plates format: " + content);
             return;
         }
 
         try {
             int plateCount = Integer.parseInt(parts[1]);
-            IO.println("DishWasher", "Received notification of " + plateCount + " dirty plates from " +
-                    sender.getName());
-            IO.println("DishWasher", "Total dirty plates now available: " + restaurant.dirtyPlates);
-
-            // The dirty plates are already added to restaurant.dirtyPlates by the waiter
-            // We just acknowledge the notification
-            if (plateCount > 0) {
-                IO.println("DishWasher", "Will start washing dishes now!");
-            }
+            IO.println(label, "Received notification of " + plateCount + " dirty plates from " +
+                    msg.getSender().getName());
+            IO.println(label, "Total dirty plates now available: " + restaurant.getPlates().getDirty());
+
+            mailbox.received(sentAt(msg));
+
+            // The dirty plates are already added to the plate inventory by the waiter,
+            // we only have to fetch them
+            dirtyNotices++;
+            dirtyPlatesReported += plateCount;
         } catch (NumberFormatException e) {
-            IO.println("DishWasher", "ERROR - Invalid plate count: " + parts[1]);
+            IO.println(label, "ERROR - Invalid plate count: " + parts[1]);
         }
     }
 
-    private void washDirtyPlates() {
-        if (restaurant.dirtyPlates <= 0) {
-            return;
+    /**
+     * @return simulated ms the sender stamped a notification with, or -1 if it
+     *         has no valid stamp
+     */
+    private static long sentAt(ACLMessage msg) {
+        String sentAt = msg.getUserDefinedParameter(MailboxStats.SENT_AT);
+        try {
+            return sentAt == null ? -1 : Long.parseLong(sentAt);
+        } catch (NumberFormatException e) {
+            return -1;
         }
+    }
 
-        // Determine how many plates to wash in this batch
-        // Use Math.min to ensure we never try to wash more plates than are available
-        int platesToWash = Math.min(restaurant.dirtyPlates, washingCapacity);
+    /**
+     * One trip to the dirty plate pile for all notifications received so far
+     */
+    private void fetchDirtyPlates() {
+        goTo(DishWasherState.TAKING_DIRTY_PLATES);
+        work.then(() -> work.sleep(500));
+        work.then(() -> {
+            // Every notification that arrived until now is covered by this trip
+            IO.println(label, "Taking dirty plates: " + dirtyPlatesReported + " announced in " +
+                    dirtyNotices + " notification(s), " + restaurant.getPlates().getDirty() + " in the pile");
+            if (dirtyPlatesReported > 0) {
+                IO.println(label, "Will start washing dishes now!");
+            }
+            mailbox.handled();
+            dirtyNotices = 0;
+            dirtyPlatesReported = 0;
+            goTo(DishWasherState.WASHING_STATION);
+        });
+    }
+
+    /**
+     * Choose how many dirty plates to wait for before filling a sink, from the
+     * live plate counts. With few clean plates left, washing starts as soon as
+     * there are minBatch plates, to get the first plates back to the preparers
+     * soonest. With plenty of clean plates there is no hurry, so we wait for a
+     * full batch and fill the sink only once for all of them. Either way the
+     * sink is then loaded with every dirty plate it can take.
+     *
+     * @return the batch size to wait for, between minBatch and washingCapacity
+     */
+    private int batchSize(int clean, int total) {
+        // The batch grows with the share of clean plates, reaching full capacity
+        // once half of the plates are clean
+        int size = total == 0 ? minBatch : washingCapacity * clean * 2 / total;
+        return Math.max(minBatch, Math.min(washingCapacity, size));
+    }
+
+    /**
+     * Load dirty plates into a free sink, up to its capacity, if there are
+     * enough of them for the current batch size. Washing runs on a timer on the simulation
+     * clock that wakes us up when it is done, so we can deliver the previous
+     * batch in the meantime.
+     *
+     * @return true if steps were queued for it
+     */
+    private boolean fillSink() {
+        if (inSink != null) {
+            return false;
+        }
+        PlateInventory plates = restaurant.getPlates();
+        int batchSize = batchSize(plates.getClean(), plates.getTotal());
+        if (plates.getDirty() < batchSize) {
+            return false;
+        }
 
-        // Double-check that we have plates to wash (guard against race conditions)
+        // Get a sink. If we carry clean plates we deliver them first and come
+        // back, otherwise there's nothing better to do than queue
+        StationResource sinks = restaurant.getStation(KitchenStation.WASHING);
+        StationResource.Reservation sink = sinks.tryReserve();
+        if (sink != null) {
+            startBatch(sink, batchSize);
+        } else if (cleanPlatesCarried > 0) {
+            return false;
+        } else {
+            StationResource.Reservation[] granted = new StationResource.Reservation[1];
+            work.reserve(sinks, reservation -> granted[0] = reservation);
+            work.then(() -> startBatch(granted[0], batchSize));
+        }
+        return true;
+    }
+
+    private void startBatch(StationResource.Reservation sink, int batchSize) {
+        PlateInventory plates = restaurant.getPlates();
+
+        // Pick up the batch (dirty -> washing), all the dirty plates the sink
+        // takes: waiting for batchSize was only about when to start. This is a
+        // single atomic transition, so no other washer can take the same plates.
+        int platesToWash = plates.startWashing(washingCapacity);
         if (platesToWash <= 0) {
-            IO.println("DishWasher", "No plates to wash (race condition prevented)");
+            // Another washer took them while we waited for the sink
+            sink.release();
             return;
         }
 
-        IO.println("DishWasher", "Starting to wash " + platesToWash + " dirty plates");
-        IO.println("DishWasher", "Dirty plates available: " + restaurant.dirtyPlates);
+        IO.println(label, "Starting to wash " + platesToWash + " dirty plates (batch size " + batchSize +
+                " with " + plates.getClean() + " clean plates left)");
+        IO.println(label, "Dirty plates left in the pile: " + plates.getDirty());
         logToUI("Washing " + platesToWash + " dirty plates...");
 
         if (gameWindow != null) {
-            gameWindow.getGameState().updateAgentStatus("dishWasher", "Washing");
+            gameWindow.getGameState().updateAgentStatus(getLocalName(), "Washing");
         }
 
-        // Remove dirty plates from the global count immediately to prevent other agents
-        // from accessing them
-        restaurant.dirtyPlates -= platesToWash;
-
-        int totalWashTime = platesToWash * washingTimePerPlate;
-
-        IO.println("DishWasher", "Washing " + platesToWash + " plates will take " +
-                (totalWashTime / 1000) + " seconds");
+        int totalWashTime = sinkFillTime + platesToWash * washingTimePerPlate;
+
+        IO.println(label, "Washing " + platesToWash + " plates will take " +
+                (totalWashTime / 1000.0) + " seconds");
+
+        Batch batch = new Batch(platesToWash, sink);
+        inSink = batch;
+        restaurant.getClock().schedule(totalWashTime, () -> {
+            // Runs on the timer thread, so only flag the batch and wake us up
+            batch.done = true;
+            ACLMessage done = new ACLMessage(ACLMessage.INFORM);
+            done.addReceiver(getAID());
+            done.setConversationId(SINK_CONVERSATION_ID);
+            done.setContent("SINK_DONE:" + batch.plates);
+            postMessage(done);
+        });
+    }
 
-        // Simulate washing time
-        try {
-            Thread.sleep(totalWashTime);
-        } catch (InterruptedException e) {
-            IO.println("DishWasher", "ERROR - Washing interrupted");
-            Thread.currentThread().interrupt();
-            // Return dirty plates to the count if washing was interrupted
-            restaurant.dirtyPlates += platesToWash;
-            return;
+    /**
+     * Take a finished batch out of the sink, freeing it
+     *
+     * @return true if steps were queued for it
+     */
+    private boolean emptySink() {
+        if (inSink == null || !inSink.done) {
+            return false;
         }
 
-        // Washing completed successfully
-        IO.println("DishWasher", "SUCCESS - Finished washing " + platesToWash + " plates");
-        IO.println("DishWasher", "Remaining dirty plates: " + restaurant.dirtyPlates);
-        logToUI("Cleaned " + platesToWash + " plates!");
+        // Come back to the sink for the plates
+        goTo(DishWasherState.WASHING_STATION);
+        work.then(this::unloadSink);
+        return true;
+    }
+
+    private void unloadSink() {
+        inSink.sink.release();
+        cleanPlatesCarried += inSink.plates;
 
-        // Send clean plates to DishPreparer
-        sendCleanPlatesToDishPreparer(platesToWash);
+        IO.println(label, "SUCCESS - Finished washing " + inSink.plates + " plates");
+        IO.println(label, "Remaining dirty plates: " + restaurant.getPlates().getDirty());
+        logToUI("Cleaned " + inSink.plates + " plates!");
+        inSink = null;
     }
 
     private void sendCleanPlatesToDishPreparer(int cleanPlateCount) {
-        // Create message to notify dish preparer about clean plates
-        ACLMessage notification = new ACLMessage(ACLMessage.INFORM);
         goTo(DishWasherState.DELIVERING_CLEAN_PLATES);
+        work.then(() -> work.sleep(500));
+        work.then(() -> handOverCleanPlates(cleanPlateCount));
+        work.then(() -> goTo(DishWasherState.WASHING_STATION));
+    }
 
-        gameWindow.wait(500);
-        goTo(DishWasherState.WASHING_STATION);
+    private void handOverCleanPlates(int cleanPlateCount) {
+        // Create message to notify dish preparer about clean plates
+        ACLMessage notification = new ACLMessage(ACLMessage.INFORM);
 
-        // Set recipient (Dish Preparer agent)
-        AID dishPreparerAID = new AID("dishPreparer", AID.ISLOCALNAME);
+        // Set recipient (Dish Preparer agent), taking turns between all of them
+        AID dishPreparerAID = new AID(nextPreparer(), AID.ISLOCALNAME);
         notification.addReceiver(dishPreparerAID);
 
         // Set message content with clean plates count
@@ -198,45 +378,49 @@ public class DishWasher extends Agent {
         // Send notification
         send(notification);
 
-        IO.println("DishWasher", "Sent " + cleanPlateCount + " clean plates to DishPreparer");
-        IO.println("DishWasher", "DishPreparer will update the restaurant's clean plate count");
+        IO.println(label, "Sent " + cleanPlateCount + " clean plates to DishPreparer");
+        IO.println(label, "DishPreparer will return them to the clean plate stock");
     }
 
+    /**
+     * Walk to a place. Ends the current step, the steps queued after it run
+     * once we have arrived.
+     */
     protected void goTo(DishWasherState destination) {
         if (currentState == destination)
             return;
 
-        double targetX = 0, targetY = 0;
+        switch (destination) {
+            case WASHING_STATION:
+                walker.walkTo(work, KitchenStation.WASHING, "Going to washing station");
+                break;
+            case DELIVERING_CLEAN_PLATES:
+                walker.walkTo(work, KitchenStation.CLEAN_PLATE_DROP, "Delivering clean plates to preparer");
+                break;
+            case TAKING_DIRTY_PLATES:
+                walker.walkTo(work, KitchenStation.DIRTY_PLATE_PICKUP, "Taking dirty plates");
+                break;
+        }
 
-        // Update UI with movement BEFORE changing state
-        if (gameWindow != null) {
-            switch (destination) {
-                case WASHING_STATION:
-                    targetX = 7.5;
-                    targetY = 11.5;
-                    gameWindow.getGameState().updateAgentStatus("dishWasher", "Going to washing station");
-                    break;
-                case DELIVERING_CLEAN_PLATES:
-                    targetX = 7.5;
-                    targetY = 3;
-                    gameWindow.getGameState().updateAgentStatus("dishWasher", "Delivering clean plates to preparer");
-                    break;
-                case TAKING_DIRTY_PLATES:
-                    targetX = 8;
-                    targetY = 8;
-                    gameWindow.getGameState().updateAgentStatus("dishWasher", "Taking dirty plates");
-                    break;
+        work.then(() -> {
+            if (gameWindow != null) {
+                gameWindow.getGameState().updateAgentStatus(getLocalName(), null);
             }
 
-            gameWindow.getGameState().moveAgent("dishWasher", targetX, targetY);
-
-            // Wait until agent has arrived at destination
-            gameWindow.waitUntilArrived("dishWasher", targetX, targetY);
-            gameWindow.getGameState().updateAgentStatus("dishWasher", null);
+            // Update state AFTER arriving at destination
+            currentState = destination;
+        });
+    }
 
+    /**
+     * Pick the dish preparer to deliver the next clean plates to, taking turns
+     * between all preparers
+     */
+    private String nextPreparer() {
+        List<String> preparers = restaurant.getStaff(Restaurant.StaffRole.DISH_PREPARER);
+        if (preparers.isEmpty()) {
+            return "dishPreparer";
         }
-
-        // Update state AFTER arriving at destination
-        currentState = destination;
+        return preparers.get(nextPreparer++ % preparers.size());
     }
 }
@@ -0,0 +1,57 @@
+package underfried.agents;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import jade.core.Agent;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import underfried.HazardEvent;
+import underfried.Restaurant;
+
+/**
+ * Subscribes an agent to one type of hazard on the restaurant's event bus.
+ * Reported hazards are queued for the agent, and a "HAZARD" message is posted
+ * to its mailbox so that a blocked behaviour wakes up right away.
+ */
+class HazardAlerts {
+    static final String CONVERSATION_ID = "hazard";
+    static final MessageTemplate TEMPLATE = MessageTemplate.MatchConversationId(CONVERSATION_ID);
+    static final MessageTemplate NOT_HAZARD = MessageTemplate.not(TEMPLATE);
+
+    private final Restaurant restaurant;
+    private final ConcurrentLinkedQueue<Restaurant.ActiveCondition> reported = new ConcurrentLinkedQueue<>();
+
+    HazardAlerts(Agent agent, Restaurant restaurant, Restaurant.EnvironmentalCondition type) {
+        this.restaurant = restaurant;
+
+        restaurant.getHazards().subscribe(type, event -> {
+            if (event.getKind() != HazardEvent.Kind.REPORTED) {
+                return;
+            }
+            reported.add(event.getCondition());
+
+            // Format: "HAZARD:TYPE:X,Y", e.g. "HAZARD:FIRE:2.0,2.0"
+            ACLMessage alert = new ACLMessage(ACLMessage.INFORM);
+            alert.setConversationId(CONVERSATION_ID);
+            alert.setSender(agent.getAID());
+            alert.addReceiver(agent.getAID());
+            alert.setContent("HAZARD:" + type.name() + ":" + event.getCondition().x + "," + event.getCondition().y);
+            agent.postMessage(alert);
+        });
+    }
+
+    /**
+     * Claim the next reported hazard that nobody else is handling yet
+     * 
+     * @return the hazard to deal with, or null if there is none
+     */
+    Restaurant.ActiveCondition claimNext() {
+        Restaurant.ActiveCondition condition;
+        while ((condition = reported.poll()) != null) {
+            if (restaurant.claimCondition(condition)) {
+                return condition;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,182 @@
+package underfried.agents;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jade.core.Agent;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import underfried.IO;
+import underfried.KitchenStation;
+import underfried.Restaurant;
+import underfried.TicketTable;
+import underfried.ui.AgentSprite.AgentType;
+import underfried.ui.GameWindow;
+
+enum RunnerState {
+    KITCHEN,
+    DINING_AREA
+}
+
+/**
+ * Front-of-house food runner: carries ready dishes from the counter to the
+ * tables. Orders, empty plates and rats are the Waiter's job.
+ *
+ * A runner waits at the counter and is woken up by the restaurant as soon as
+ * a dish is placed on it, so a dish only waits for a runner to get back from
+ * the tables, never for a polling round.
+ */
+public class Runner extends Agent {
+    // Conversation of the messages that tell us a dish was placed on the counter
+    static final String DISH_READY_CONVERSATION_ID = "dish-ready";
+    private static final MessageTemplate DISH_READY = MessageTemplate.MatchConversationId(DISH_READY_CONVERSATION_ID);
+
+    // Most dishes a runner carries at once
+    private static final int MAX_DISHES = 2;
+
+    private Restaurant restaurant;
+    private String label; // Name used in logs and on the sprite, e.g. "Runner2"
+    private GameWindow gameWindow;
+    private RunnerState currentState = RunnerState.KITCHEN;
+    private Walker walker;
+    private RunningWorkflow work;
+
+    @Override
+    protected void setup() {
+        Object[] args = getArguments();
+        if (args != null && args.length > 0) {
+            restaurant = (Restaurant) args[0];
+            if (args.length > 1) {
+                gameWindow = (GameWindow) args[1];
+            }
+        } else {
+            throw new IllegalArgumentException("Runner agent missing required arguments: Restaurant instance");
+        }
+
+        label = getLocalName().substring(0, 1).toUpperCase() + getLocalName().substring(1);
+
+        // Start at the counter, matching currentState
+        if (gameWindow != null) {
+            gameWindow.getGameState().addAgent(getLocalName(), label, AgentType.WAITER,
+                    KitchenStation.COUNTER.getX(), KitchenStation.COUNTER.getY());
+        }
+        walker = new Walker(getLocalName(), restaurant, gameWindow,
+                KitchenStation.COUNTER.getX(), KitchenStation.COUNTER.getY());
+
+        // Format: "DISH_READY", posted to ourselves from the preparer's thread
+        restaurant.subscribeReadyDishes(() -> {
+            ACLMessage ready = new ACLMessage(ACLMessage.INFORM);
+            ready.setConversationId(DISH_READY_CONVERSATION_ID);
+            ready.addReceiver(getAID());
+            ready.setContent("DISH_READY");
+            postMessage(ready);
+        });
+
+        IO.println(label, "Agent " + getAID().getName() + " is ready to run dishes!");
+        logToUI("Runner ready to serve!");
+
+        work = new RunningWorkflow();
+        addBehaviour(work);
+    }
+
+    private void logToUI(String message) {
+        if (gameWindow != null) {
+            gameWindow.appendLog("[" + label + "] " + message);
+        }
+    }
+
+    @Override
+    protected void takeDown() {
+        IO.println(label, "Agent " + getAID().getName() + " is finishing work.");
+    }
+
+    private class RunningWorkflow extends StepBehaviour {
+        RunningWorkflow() {
+            super(Runner.this, restaurant.getClock());
+        }
+
+        @Override
+        protected boolean idle() {
+            // Dish ready signals only wake us up, the counter says what's there
+            while (receive(DISH_READY) != null) {
+            }
+
+            if (restaurant.getReadyDishCount() > 0) {
+                goTo(RunnerState.KITCHEN);
+                then(Runner.this::pickUpReadyDishes);
+                return true;
+            }
+
+            // Wait at the counter for the next dish
+            if (currentState != RunnerState.KITCHEN) {
+                goTo(RunnerState.KITCHEN);
+                then(() -> {
+                    if (gameWindow != null) {
+                        gameWindow.getGameState().updateAgentStatus(getLocalName(), "Waiting for dishes");
+                    }
+                });
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Walk to a place. Ends the current step, the steps queued after it run
+     * once we have arrived.
+     */
+    protected void goTo(RunnerState destination) {
+        if (currentState == destination)
+            return;
+
+        if (destination == RunnerState.KITCHEN) {
+            walker.walkTo(work, KitchenStation.COUNTER, "Going to counter");
+        } else {
+            // Move to center of dining area
+            walker.walkTo(work, KitchenStation.DINING_AREA, "Going to dining area");
+        }
+
+        work.then(() -> currentState = destination);
+    }
+
+    private void pickUpReadyDishes() {
+        // Pick up ready dishes straight from the counter queue. Another runner
+        // may have been faster
+        List<TicketTable.Ticket> mealsToDeliver = new ArrayList<>();
+        TicketTable.Ticket doneDish;
+        while (mealsToDeliver.size() < MAX_DISHES && (doneDish = restaurant.pollReadyDish()) != null) {
+            mealsToDeliver.add(doneDish);
+            IO.println(label, "I've picked up the dish " + doneDish + " from the kitchen.");
+        }
+
+        if (!mealsToDeliver.isEmpty()) {
+            IO.println(label, "[VALIDATION] ✓ Picked up " + mealsToDeliver.size() + " dish(es)");
+            IO.println(label, "[VALIDATION] Remaining ready dishes: " + restaurant.getReadyDishCount());
+
+            deliverMeals(mealsToDeliver);
+        }
+    }
+
+    private void deliverMeals(List<TicketTable.Ticket> mealsToDeliver) {
+        goTo(RunnerState.DINING_AREA);
+
+        work.then(() -> {
+            if (gameWindow != null) {
+                gameWindow.getGameState().updateAgentStatus(getLocalName(), "Delivering meals");
+            }
+        });
+
+        for (TicketTable.Ticket meal : mealsToDeliver) {
+            work.then(() -> work.sleep(500));
+            work.then(() -> serveMeal(meal));
+        }
+    }
+
+    private void serveMeal(TicketTable.Ticket meal) {
+        IO.println(label, "Delivering the dish " + meal + " to a table.");
+        logToUI("Delivered " + meal + " to table");
+        // When a meal is delivered, the customer now has a plate
+        restaurant.getPlates().serve();
+        restaurant.getTickets().advance(meal, TicketTable.Stage.SERVED);
+    }
+}
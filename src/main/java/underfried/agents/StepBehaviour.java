@@ -0,0 +1,279 @@
+package underfried.agents;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import jade.core.Agent;
+import jade.core.behaviours.Behaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import underfried.SimulationClock;
+import underfried.StationResource;
+
+/**
+ * An agent's workflow as a state machine of short steps that never block the
+ * agent thread.
+ *
+ * A step that takes time doesn't sleep. It calls sleep(), await() or
+ * reserve() and returns, and the behaviour blocks until the simulation clock,
+ * the walking sprite or the station wakes it up again. Meanwhile JADE keeps
+ * delivering messages and running the agent's other behaviours, and the
+ * thread is free to drive other agents. JADE's own WakerBehaviour can't be
+ * used for this because it waits in wall-clock time, which the virtual clock
+ * doesn't have.
+ *
+ * Steps run one per action(), in the order they were queued. A step continues
+ * after a wait by queuing its next part with then(), which runs right after
+ * the current step, before anything queued earlier. beforeStep() can push
+ * urgent work (e.g. a fire) to the front of the queue between any two steps.
+ * When the queue is empty, idle() looks for new work.
+ *
+ * A finished wait wakes the behaviour with a message to the agent itself, the
+ * one wake-up JADE allows from other threads. Other behaviours of the agent
+ * must not receive these messages, see NOT_WAKE. Under the virtual clock, time
+ * is held from the moment a wait ends until the step after it has run, so the
+ * clock can't move on while the agent still has to react to it.
+ */
+abstract class StepBehaviour extends Behaviour {
+    // Conversation of the messages that end a wait
+    private static final String WAKE_CONVERSATION_ID = "step-wake";
+    private static final MessageTemplate WAKE_TEMPLATE = MessageTemplate.MatchConversationId(WAKE_CONVERSATION_ID);
+    // Matches every message except the ones that end a wait
+    static final MessageTemplate NOT_WAKE = MessageTemplate.not(WAKE_TEMPLATE);
+
+    protected final SimulationClock clock;
+    private final Deque<Runnable> steps = new ArrayDeque<>();
+    private final List<Runnable> queuedByStep = new ArrayList<>();
+    private Wake wake; // The wait the current step ended with, or null
+
+    /**
+     * A wait for the simulation clock, a station or an arrival
+     */
+    private class Wake {
+        final boolean interruptible; // Ends early when a message arrives
+        private boolean due;
+        private boolean cancelled;
+
+        Wake(boolean interruptible) {
+            this.interruptible = interruptible;
+        }
+
+        /**
+         * End the wait. Called from the clock timer, by whoever releases a
+         * station or by the UI when a sprite arrives.
+         */
+        void fire() {
+            synchronized (this) {
+                if (cancelled || due) {
+                    return;
+                }
+                due = true;
+                clock.holdTime();
+            }
+            ACLMessage wakeUp = new ACLMessage(ACLMessage.INFORM);
+            wakeUp.addReceiver(myAgent.getAID());
+            wakeUp.setConversationId(WAKE_CONVERSATION_ID);
+            myAgent.postMessage(wakeUp);
+        }
+
+        synchronized boolean isDue() {
+            return due;
+        }
+
+        /**
+         * Stop waiting, e.g. because a message interrupted an idle wait
+         */
+        synchronized void cancel() {
+            cancelled = true;
+            if (due) {
+                clock.releaseTime();
+            }
+        }
+
+        /**
+         * Hand the time held by fire() back to the clock
+         */
+        synchronized void resumed() {
+            if (due) {
+                clock.releaseTime();
+            }
+        }
+    }
+
+    StepBehaviour(Agent agent, SimulationClock clock) {
+        super(agent);
+        this.clock = clock;
+    }
+
+    @Override
+    public final void action() {
+        // Wake-ups only restart us, the wait itself says whether it is over
+        while (myAgent.receive(WAKE_TEMPLATE) != null) {
+        }
+
+        Wake resumed = null;
+        if (wake != null) {
+            if (!wake.isDue()) {
+                if (wake.interruptible) {
+                    // Restarted by a message, look at it now
+                    wake.cancel();
+                    wake = null;
+                } else {
+                    // Restarted by a message that has to wait
+                    block();
+                    return;
+                }
+            } else {
+                resumed = wake;
+                wake = null;
+            }
+        }
+
+        try {
+            beforeStep();
+            flushQueuedSteps();
+            Runnable step = steps.poll();
+            if (step != null) {
+                step.run();
+                flushQueuedSteps();
+            } else if (wake == null && !idle()) {
+                flushQueuedSteps();
+                block(); // Until a message arrives
+                return;
+            }
+            flushQueuedSteps();
+        } finally {
+            if (resumed != null) {
+                resumed.resumed();
+            }
+        }
+
+        if (wake != null) {
+            block(); // Until the wait fires
+        }
+    }
+
+    private void flushQueuedSteps() {
+        for (int i = queuedByStep.size() - 1; i >= 0; i--) {
+            steps.addFirst(queuedByStep.get(i));
+        }
+        queuedByStep.clear();
+    }
+
+    @Override
+    public boolean done() {
+        return false;
+    }
+
+    /**
+     * Called before every step, to push urgent work to the front of the queue
+     * with then()
+     */
+    protected void beforeStep() {
+    }
+
+    /**
+     * Called when there are no steps left, to queue the next work
+     *
+     * @return false if there is nothing to do until a message arrives
+     */
+    protected abstract boolean idle();
+
+    // ==================== Steps ====================
+
+    /**
+     * Queue a step to run right after the current one, before the steps queued
+     * earlier. Steps queued by the same step keep their order.
+     */
+    void then(Runnable step) {
+        queuedByStep.add(step);
+    }
+
+    /**
+     * Queue a step to run after all steps queued so far
+     */
+    void later(Runnable step) {
+        steps.addLast(step);
+    }
+
+    /**
+     * @return true if steps are queued or the workflow is waiting
+     */
+    boolean isBusy() {
+        return !steps.isEmpty() || !queuedByStep.isEmpty() || wake != null;
+    }
+
+    // ==================== Waits ====================
+    // At most one per step, the next step runs once it is over
+
+    /**
+     * Let simulated time pass before the next step
+     *
+     * @param millis simulated milliseconds
+     */
+    void sleep(long millis) {
+        sleep(millis, false);
+    }
+
+    /**
+     * Let simulated time pass before the next step, or less if a message
+     * arrives first. For waiting for work while idle.
+     *
+     * @param millis simulated milliseconds
+     */
+    void sleepUntilMessage(long millis) {
+        sleep(millis, true);
+    }
+
+    private void sleep(long millis, boolean interruptible) {
+        if (millis <= 0) {
+            return;
+        }
+        Wake timer = startWait(new Wake(interruptible));
+        clock.schedule(millis, timer::fire);
+    }
+
+    /**
+     * Wait until a future completes, e.g. a sprite animated by the UI arriving.
+     * The next step runs on the agent's thread, not on the completing one.
+     */
+    void await(CompletableFuture<?> done) {
+        if (done.isDone()) {
+            return;
+        }
+        Wake arrival = startWait(new Wake(false));
+        done.whenComplete((result, error) -> arrival.fire());
+    }
+
+    /**
+     * Reserve a slot of a station, waiting in line without blocking if it is
+     * full
+     *
+     * @param station the station
+     * @param granted receives the reservation, before the next step runs
+     */
+    void reserve(StationResource station, Consumer<StationResource.Reservation> granted) {
+        StationResource.Reservation now = station.tryReserve();
+        if (now != null) {
+            granted.accept(now);
+            return;
+        }
+        Wake inLine = startWait(new Wake(false));
+        station.request(reservation -> {
+            granted.accept(reservation);
+            inLine.fire();
+        });
+    }
+
+    private Wake startWait(Wake next) {
+        if (wake != null) {
+            throw new IllegalStateException("Step started a second wait");
+        }
+        wake = next;
+        return next;
+    }
+}
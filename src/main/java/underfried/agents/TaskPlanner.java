@@ -0,0 +1,223 @@
+package underfried.agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import underfried.KitchenStation;
+
+/**
+ * Orders a chef's pending kitchen actions so that it walks as little as
+ * possible.
+ *
+ * Every job (one ingredient, possibly batched over several meals) is cut at the
+ * cutting station if needed, then either put on the stove or delivered to the
+ * dish preparer. The planner searches all orderings that keep each job's
+ * cut-before-cook/deliver dependency, using the station-to-station travel
+ * times of Walker.
+ *
+ * Walking alone is not the whole cost: cutting everything first and then
+ * carrying all pots to the stove walks the least, but leaves the stove idle
+ * while the chef cuts. Every second a pot waits to go on the stove therefore
+ * counts as STOVE_DELAY_WEIGHT seconds of walking. Deliveries have no such
+ * cost, so the planner gathers them into as few trips as it can.
+ */
+class TaskPlanner {
+    // Jobs beyond this are planned in arrival order, the search would get too big
+    private static final int MAX_PLANNED_ACTIONS = 16;
+    // Cost of a pot waiting to go on the stove, relative to the same time walking
+    private static final long STOVE_DELAY_WEIGHT = 1;
+
+    /**
+     * Something a chef does at one station
+     */
+    enum Action {
+        // Listed in tie-breaking order
+        STOVE(KitchenStation.COOKING),
+        CUT(KitchenStation.CUTTING),
+        DELIVER(KitchenStation.PREP);
+
+        final KitchenStation station;
+
+        Action(KitchenStation station) {
+            this.station = station;
+        }
+    }
+
+    /**
+     * One action of one job, in the order it should be carried out
+     */
+    static class Step {
+        final Action action;
+        final int job; // Index into the jobs the plan was made for
+        final long workMillis; // Time spent at the station, for the planner
+
+        Step(Action action, int job, long workMillis) {
+            this.action = action;
+            this.job = job;
+            this.workMillis = workMillis;
+        }
+    }
+
+    /**
+     * The planned steps with their travel time, and the travel time of working
+     * through the jobs one after another
+     */
+    static class Plan {
+        final List<Step> steps;
+        final long travelMillis;
+        final long naiveTravelMillis;
+
+        Plan(List<Step> steps, long travelMillis, long naiveTravelMillis) {
+            this.steps = Collections.unmodifiableList(steps);
+            this.travelMillis = travelMillis;
+            this.naiveTravelMillis = naiveTravelMillis;
+        }
+
+        /**
+         * @return simulated ms of walking saved compared to doing the jobs one
+         *         after another
+         */
+        long getSavedMillis() {
+            return naiveTravelMillis - travelMillis;
+        }
+    }
+
+    private TaskPlanner() {
+    }
+
+    /**
+     * Plan the actions for a set of jobs
+     *
+     * @param start     where the chef is standing now
+     * @param cutMillis for each job, simulated ms of cutting, or 0 if it
+     *                  doesn't need cutting
+     * @param cook      for each job, whether it goes on the stove (otherwise it
+     *                  is delivered to the dish preparer)
+     * @return the plan, covering every action of every job
+     */
+    static Plan plan(KitchenStation start, long[] cutMillis, boolean[] cook) {
+        // The actions of each job in dependency order, which is also the naive plan
+        List<Step> actions = new ArrayList<>();
+        List<Integer> requires = new ArrayList<>(); // Action that must come first, or -1
+        for (int job = 0; job < cutMillis.length; job++) {
+            int previous = -1;
+            if (cutMillis[job] > 0) {
+                previous = actions.size();
+                actions.add(new Step(Action.CUT, job, cutMillis[job]));
+                requires.add(-1);
+            }
+            actions.add(new Step(cook[job] ? Action.STOVE : Action.DELIVER, job, 0));
+            requires.add(previous);
+        }
+
+        long naiveTravel = travel(start, actions);
+        if (actions.size() > MAX_PLANNED_ACTIONS) {
+            return new Plan(actions, naiveTravel, naiveTravel);
+        }
+
+        Search search = new Search(actions, requires);
+        List<Step> steps = search.bestOrder(start);
+        return new Plan(steps, travel(start, steps), naiveTravel);
+    }
+
+    private static long travel(KitchenStation start, List<Step> steps) {
+        long travel = 0;
+        KitchenStation at = start;
+        for (Step step : steps) {
+            travel += Walker.travelMillis(at, step.action.station);
+            at = step.action.station;
+        }
+        return travel;
+    }
+
+    /**
+     * Cheapest order of the actions still to do, memoized by the set of actions
+     * done and the station the chef is at. Time spent walking or cutting costs
+     * once for the walking and again for every pot still waiting to go on the
+     * stove. Action ranks give the tie-breaking order.
+     */
+    private static class Search {
+        private final List<Step> actions;
+        private final int[] requiredMask;
+        private final int stoveMask;
+        private final Integer[] byRank;
+        private final long[][] memo;
+
+        Search(List<Step> actions, List<Integer> requires) {
+            this.actions = actions;
+            this.requiredMask = new int[actions.size()];
+            int stoves = 0;
+            for (int i = 0; i < actions.size(); i++) {
+                requiredMask[i] = requires.get(i) < 0 ? 0 : 1 << requires.get(i);
+                if (actions.get(i).action == Action.STOVE) {
+                    stoves |= 1 << i;
+                }
+            }
+            this.stoveMask = stoves;
+            this.byRank = new Integer[actions.size()];
+            for (int i = 0; i < byRank.length; i++) {
+                byRank[i] = i;
+            }
+            // Stable sort keeps the jobs' arrival order within an action type
+            Arrays.sort(byRank, (a, b) -> actions.get(a).action.compareTo(actions.get(b).action));
+            this.memo = new long[1 << actions.size()][KitchenStation.values().length];
+            for (long[] row : memo) {
+                Arrays.fill(row, -1);
+            }
+        }
+
+        List<Step> bestOrder(KitchenStation start) {
+            List<Step> order = new ArrayList<>();
+            int done = 0;
+            KitchenStation at = start;
+            while (order.size() < actions.size()) {
+                int best = bestNext(done, at);
+                order.add(actions.get(best));
+                done |= 1 << best;
+                at = actions.get(best).action.station;
+            }
+            return order;
+        }
+
+        private int bestNext(int done, KitchenStation at) {
+            int best = -1;
+            long bestCost = Long.MAX_VALUE;
+            for (int i : byRank) {
+                if (!available(done, i)) {
+                    continue;
+                }
+                long cost = cost(done, at, i) + remaining(done | 1 << i, actions.get(i).action.station);
+                if (cost < bestCost) {
+                    best = i;
+                    bestCost = cost;
+                }
+            }
+            return best;
+        }
+
+        private long remaining(int done, KitchenStation at) {
+            if (done == (1 << actions.size()) - 1) {
+                return 0;
+            }
+            if (memo[done][at.ordinal()] < 0) {
+                int next = bestNext(done, at);
+                memo[done][at.ordinal()] = cost(done, at, next)
+                        + remaining(done | 1 << next, actions.get(next).action.station);
+            }
+            return memo[done][at.ordinal()];
+        }
+
+        private long cost(int done, KitchenStation at, int action) {
+            Step step = actions.get(action);
+            long travel = Walker.travelMillis(at, step.action.station);
+            int waitingPots = Integer.bitCount(stoveMask & ~done);
+            return travel + STOVE_DELAY_WEIGHT * waitingPots * (travel + step.workMillis);
+        }
+
+        private boolean available(int done, int action) {
+            return (done & 1 << action) == 0 && (done & requiredMask[action]) == requiredMask[action];
+        }
+    }
+}
@@ -5,10 +5,12 @@ import java.util.List;
 
 import jade.core.AID;
 import jade.core.Agent;
-import jade.core.behaviours.TickerBehaviour;
 import jade.lang.acl.ACLMessage;
 import underfried.IO;
+import underfried.KitchenStation;
+import underfried.MailboxStats;
 import underfried.Restaurant;
+import underfried.TicketTable;
 import underfried.ui.GameWindow;
 
 enum WaiterState {
@@ -16,13 +18,27 @@ enum WaiterState {
     DINING_AREA
 }
 
+/**
+ * Front-of-house order taker: takes orders and empty plates at the tables,
+ * hands them to the kitchen and chases rats. Ready dishes are carried to the
+ * tables by the Runner agents.
+ */
 public class Waiter extends Agent {
+    // Simulated ms between looks at the tables
+    private static final long DINING_ROUND_MILLIS = 3000;
+
     private Restaurant restaurant = null;
     private GameWindow gameWindow = null;
     private WaiterState currentState = WaiterState.KITCHEN;
+    private Walker walker;
+    private HazardAlerts ratAlerts;
+    private ServiceWorkflow work;
+    private long nextDiningRound; // Simulated ms the next look at the tables is due
+    private boolean chasingRat;
 
-    private int ordersTaken = 0;
+    private final List<TicketTable.Ticket> ordersTaken = new ArrayList<>();
     private int emptyPlatesTaken = 0;
+    private int nextChef = 0; // Round-robin index into the chef roster
 
     protected void setup() {
         Object[] args = getArguments();
@@ -31,246 +47,267 @@ public class Waiter extends Agent {
             gameWindow = (GameWindow) args[1];
         }
 
+        // Start in the kitchen, matching currentState
+        walker = new Walker(getLocalName(), restaurant, gameWindow,
+                KitchenStation.COUNTER.getX(), KitchenStation.COUNTER.getY());
+
         logToUI("Waiter ready to serve!");
 
-        addBehaviour(new PeekDiningAreaBehavior(this, 3000));
-        addBehaviour(new PeekReadyDishesBehavior(this, 2000));
+        // Rats are pushed to us as they appear instead of being found on the next
+        // look at the tables
+        ratAlerts = new HazardAlerts(this, restaurant, Restaurant.EnvironmentalCondition.RAT);
+
+        // The first round is due one period after opening
+        nextDiningRound = restaurant.getClock().now() + DINING_ROUND_MILLIS;
+        work = new ServiceWorkflow();
+        addBehaviour(work);
     }
 
     /**
-     * Check for rats and bonk them!
+     * Bonk a rat and come back to what we were doing!
      */
-    private void checkForRats() {
-        if (restaurant.getConditionCount(Restaurant.EnvironmentalCondition.RAT) > 0) {
-            java.util.List<Restaurant.ActiveCondition> rats = restaurant
-                    .getConditionsByType(Restaurant.EnvironmentalCondition.RAT);
-
-            for (Restaurant.ActiveCondition rat : rats) {
-                if (!rat.resolved) {
-                    IO.println(getAID().getName(), "RAT SPOTTED at (" + rat.x + ", " + rat.y + ")!");
-                    logToUI("ALERT: Rat spotted by Waiter!");
-
-                    if (gameWindow != null) {
-                        gameWindow.getGameState().updateAgentStatus("waiter", "Chasing rat!");
-                    }
-
-                    // Move to rat location
-                    IO.println(getAID().getName(), "Moving to catch the rat...");
-                    if (gameWindow != null) {
-                        gameWindow.getGameState().moveAgent("waiter", rat.x, rat.y);
-                        gameWindow.waitUntilArrived("waiter", rat.x, rat.y);
-                    }
-
-                    // BONK the rat!
-                    IO.println(getAID().getName(), "BONK! Got that rat!");
-                    logToUI("Waiter bonked the rat!");
-
-                    if (gameWindow != null) {
-                        gameWindow.getGameState().updateAgentStatus("waiter", "Bonked rat!");
-                    }
-
-                    // Wait a moment for the bonk animation
-                    try {
-                        Thread.sleep(1500);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-
-                    // Alert other agents about successful rat elimination
-                    // ACLMessage alert = new ACLMessage(ACLMessage.INFORM);
-                    // alert.addReceiver(new AID("chef", AID.ISLOCALNAME));
-                    // alert.addReceiver(new AID("dishWasher", AID.ISLOCALNAME));
-                    // alert.setContent("RAT_ELIMINATED:" + rat.x + "," + rat.y);
-                    // send(alert);
-
-                    // IO.println(getAID().getName(), "Alerted other agents - rat has been
-                    // eliminated!");
-
-                    // Mark as resolved (rat was bonked and eliminated)
-                    restaurant.resolveCondition(rat);
-                    IO.println(getAID().getName(), "Rat eliminated successfully!");
-                    logToUI("Rat eliminated by Waiter!");
-                }
-            }
+    private void chaseRat(Restaurant.ActiveCondition rat) {
+        chasingRat = true;
+        double backX = walker.getX();
+        double backY = walker.getY();
+
+        IO.println(getAID().getName(), "RAT SPOTTED at (" + rat.x + ", " + rat.y + ")!");
+        logToUI("ALERT: Rat spotted by Waiter!");
+
+        if (gameWindow != null) {
+            gameWindow.getGameState().updateAgentStatus("waiter", "Chasing rat!");
         }
+
+        // Move to rat location
+        IO.println(getAID().getName(), "Moving to catch the rat...");
+        walker.walkTo(work, rat.x, rat.y, null);
+
+        work.then(() -> {
+            // BONK the rat!
+            IO.println(getAID().getName(), "BONK! Got that rat!");
+            logToUI("Waiter bonked the rat!");
+
+            if (gameWindow != null) {
+                gameWindow.getGameState().updateAgentStatus("waiter", "Bonked rat!");
+            }
+
+            // Wait a moment for the bonk animation
+            work.sleep(1500);
+        });
+        work.then(() -> {
+            resolveRat(rat);
+            walker.walkTo(work, backX, backY, null);
+        });
+        work.then(() -> chasingRat = false);
+    }
+
+    private void resolveRat(Restaurant.ActiveCondition rat) {
+        // Alert other agents about successful rat elimination
+        // ACLMessage alert = new ACLMessage(ACLMessage.INFORM);
+        // alert.addReceiver(new AID("chef", AID.ISLOCALNAME));
+        // alert.addReceiver(new AID("dishWasher", AID.ISLOCALNAME));
+        // alert.setContent("RAT_ELIMINATED:" + rat.x + "," + rat.y);
+        // send(alert);
+
+        // IO.println(getAID().getName(), "Alerted other agents - rat has been
+        // eliminated!");
+
+        // Mark as resolved (rat was bonked and eliminated)
+        restaurant.resolveCondition(rat);
+        IO.println(getAID().getName(), "Rat eliminated successfully!");
+        logToUI("Rat eliminated by Waiter!");
     }
 
-    private class PeekDiningAreaBehavior extends TickerBehaviour {
-        public PeekDiningAreaBehavior(Agent a, long timeout) {
-            super(a, timeout);
+    /**
+     * The waiter's rounds: a look at the tables every DINING_ROUND_MILLIS of
+     * simulated time. Rats are chased between any two steps.
+     */
+    private class ServiceWorkflow extends StepBehaviour {
+        ServiceWorkflow() {
+            super(Waiter.this, restaurant.getClock());
         }
 
-        protected void onTick() {
-            IO.println("[Waiter]: I'll take a look at the tables.");
-
-            // Check for rats first
-            checkForRats();
-
-            takeOrders();
-            takeEmptyPlates();
-
-            goTo(WaiterState.KITCHEN);
-            IO.println("[Waiter]: I'm back with " + ordersTaken + " orders and " + emptyPlatesTaken
-                    + " empty plates.");
-
-            restaurant.dirtyPlates += emptyPlatesTaken;
-
-            if (ordersTaken > 0) {
-                String[] availableDishes = restaurant.getAvailableDishes().toArray(new String[0]);
-                String ordersMessage = "";
-
-                for (int i = 0; i < ordersTaken; i++) {
-                    int dishIndex = (int) (Math.random() * availableDishes.length);
-                    String dishOrdered = availableDishes[dishIndex];
-
-                    // Add order to shared state for validation/control
-                    if (restaurant.addOrder(dishOrdered)) {
-                        ordersMessage += dishOrdered + "\n";
-                        IO.println("[Waiter]: Added order for " + dishOrdered + " to tracking queue.");
-                        logToUI("New order: " + dishOrdered);
-                    } else {
-                        IO.println("[Waiter]: ERROR - Unknown dish: " + dishOrdered);
-                    }
-                }
-
-                // Send ACL message to Chef with all orders
-                if (!ordersMessage.isEmpty()) {
-                    ACLMessage orderMessage = new ACLMessage(ACLMessage.INFORM);
-                    AID chefAID = new AID("chef", AID.ISLOCALNAME);
-                    orderMessage.addReceiver(chefAID);
-                    orderMessage.setContent(ordersMessage.trim());
-                    send(orderMessage);
-
-                    if (gameWindow != null) {
-                        gameWindow.getGameState().updateAgentStatus("waiter", "Sent " + ordersTaken + " orders");
-                    }
-
-                    IO.println("[Waiter]: Sent " + ordersTaken + " order(s) to Chef via message.");
-                    IO.println("[Waiter]: [VALIDATION] Total orders in tracking queue: " +
-                            restaurant.getPendingOrderCount());
-                }
-
-                ordersTaken = 0;
+        @Override
+        protected void beforeStep() {
+            // Rat alerts only wake us up, the rats themselves are queued
+            while (receive(HazardAlerts.TEMPLATE) != null) {
             }
 
-            // Notify the dishwasher about dirty plates
-            if (emptyPlatesTaken > 0) {
-                ACLMessage dirtyPlatesNotification = new ACLMessage(ACLMessage.INFORM);
-                AID dishWasherAID = new AID("dishWasher", AID.ISLOCALNAME);
-                dirtyPlatesNotification.addReceiver(dishWasherAID);
-                dirtyPlatesNotification.setContent("DIRTY_PLATES:" + emptyPlatesTaken);
-                send(dirtyPlatesNotification);
-
-                IO.println(
-                        "[Waiter]: Notified dishwasher about " + emptyPlatesTaken + " dirty plates.");
-                emptyPlatesTaken = 0;
+            Restaurant.ActiveCondition rat;
+            if (!chasingRat && (rat = ratAlerts.claimNext()) != null) {
+                then(() -> chaseRat(rat));
             }
         }
-    }
 
-    private class PeekReadyDishesBehavior extends TickerBehaviour {
-        public PeekReadyDishesBehavior(Agent a, long timeout) {
-            super(a, timeout);
+        @Override
+        protected boolean idle() {
+            long now = clock.now();
+            if (now >= nextDiningRound) {
+                nextDiningRound = now + DINING_ROUND_MILLIS;
+                peekDiningArea();
+            } else {
+                // Until the next round, or a rat
+                sleepUntilMessage(nextDiningRound - now);
+            }
+            return true;
         }
+    }
+
+    private void peekDiningArea() {
+        IO.println("[Waiter]: I'll take a look at the tables.");
 
-        protected void onTick() {
-            goTo(WaiterState.KITCHEN);
+        goTo(WaiterState.DINING_AREA);
+        work.then(this::takeOrders);
+        work.then(this::takeEmptyPlates);
+        work.then(() -> goTo(WaiterState.KITCHEN));
+        work.then(this::handInAtKitchen);
+    }
 
-            // Validate shared state before picking up dishes
-            int availableDishes = restaurant.readyDishes.size();
-            IO.println("[Waiter]: [VALIDATION] Checking kitchen - Ready dishes: " + availableDishes);
+    /**
+     * Hand the orders to a chef and the bussed plates to the dishwashers
+     */
+    private void handInAtKitchen() {
+        IO.println("[Waiter]: I'm back with " + ordersTaken.size() + " orders and " + emptyPlatesTaken
+                + " empty plates.");
+
+        // Bussed plates are now dirty (taken -> dirty)
+        emptyPlatesTaken = restaurant.getPlates().bus(emptyPlatesTaken);
+
+        if (!ordersTaken.isEmpty()) {
+            // One "TICKET:DISH" line per order
+            String ordersMessage = "";
+            for (TicketTable.Ticket ticket : ordersTaken) {
+                ordersMessage += ticket.id + ":" + ticket.mealName + "\n";
+            }
 
-            int mealsToTake = Math.min(2, availableDishes);
+            // Send ACL message to the next Chef with all orders. The chefs split
+            // them into ingredient tasks the other chefs can steal
+            ACLMessage orderMessage = new ACLMessage(ACLMessage.INFORM);
+            AID chefAID = new AID(nextChef(), AID.ISLOCALNAME);
+            orderMessage.addReceiver(chefAID);
+            orderMessage.setContent(ordersMessage.trim());
+            for (TicketTable.Ticket ticket : ordersTaken) {
+                restaurant.getTickets().advance(ticket, TicketTable.Stage.SENT);
+            }
+            send(orderMessage);
 
-            if (mealsToTake > 0) {
-                IO.println("[Waiter]: [VALIDATION] ✓ Picking up " + mealsToTake + " dish(es)");
-                List<String> mealsToDeliver = new ArrayList<>();
+            if (gameWindow != null) {
+                gameWindow.getGameState().updateAgentStatus("waiter", "Sent " + ordersTaken.size() + " orders");
+            }
 
-                for (int i = 0; i < mealsToTake; i++) {
-                    String doneDish = restaurant.readyDishes.poll();
-                    mealsToDeliver.add(doneDish);
-                    IO.println("[Waiter]: I've picked up the dish " + doneDish + " from the kitchen.");
-                }
+            IO.println("[Waiter]: Sent " + ordersTaken.size() + " order(s) to " + chefAID.getLocalName()
+                    + " via message.");
+            IO.println("[Waiter]: [VALIDATION] Orders waiting for a chef: " +
+                    restaurant.getPendingOrderCount());
 
-                IO.println("[Waiter]: [VALIDATION] Remaining ready dishes: " + restaurant.readyDishes.size());
+            ordersTaken.clear();
+        }
 
-                deliverMeals(mealsToDeliver);
+        // Notify the dishwashers about dirty plates. They share the dirty pile,
+        // so every washer hears about it and the first free one picks it up
+        if (emptyPlatesTaken > 0) {
+            ACLMessage dirtyPlatesNotification = new ACLMessage(ACLMessage.INFORM);
+            List<String> washers = restaurant.getStaff(Restaurant.StaffRole.DISH_WASHER);
+            if (washers.isEmpty()) {
+                dirtyPlatesNotification.addReceiver(new AID("dishWasher", AID.ISLOCALNAME));
             }
+            for (String washer : washers) {
+                dirtyPlatesNotification.addReceiver(new AID(washer, AID.ISLOCALNAME));
+            }
+            dirtyPlatesNotification.setContent("DIRTY_PLATES:" + emptyPlatesTaken);
+            dirtyPlatesNotification.addUserDefinedParameter(MailboxStats.SENT_AT,
+                    Long.toString(restaurant.getClock().now()));
+            send(dirtyPlatesNotification);
+
+            IO.println(
+                    "[Waiter]: Notified dishwasher about " + emptyPlatesTaken + " dirty plates.");
+            emptyPlatesTaken = 0;
         }
     }
 
+    /**
+     * Pick the chef to hand the next orders to, taking turns between all chefs
+     */
+    private String nextChef() {
+        List<String> chefs = restaurant.getStaff(Restaurant.StaffRole.CHEF);
+        if (chefs.isEmpty()) {
+            return "chef";
+        }
+        return chefs.get(nextChef++ % chefs.size());
+    }
+
+    /**
+     * Walk to a place. Ends the current step, the steps queued after it run
+     * once we have arrived.
+     */
     protected void goTo(WaiterState destination) {
         if (currentState == destination)
             return;
 
-        double targetX = 0, targetY = 0;
-        // Update UI with movement BEFORE changing state
-        if (gameWindow != null) {
-            if (destination == WaiterState.KITCHEN) {
-                targetX = 9.5;
-                targetY = 7.0;
-                gameWindow.getGameState().updateAgentStatus("waiter", "Going to kitchen");
-            } else {
-                // Move to center of dining area
-                targetX = 15.0;
-                targetY = 7.0;
-                gameWindow.getGameState().updateAgentStatus("waiter", "Going to dining area");
-            }
-
-            gameWindow.getGameState().moveAgent("waiter", targetX, targetY);
-            gameWindow.waitUntilArrived("waiter", targetX, targetY);
+        if (destination == WaiterState.KITCHEN) {
+            walker.walkTo(work, KitchenStation.COUNTER, "Going to kitchen");
+        } else {
+            // Move to center of dining area
+            walker.walkTo(work, KitchenStation.DINING_AREA, "Going to dining area");
         }
 
-        currentState = destination;
+        work.then(() -> currentState = destination);
     }
 
+    /**
+     * Take the orders at the tables, we're in the dining area
+     */
     protected void takeOrders() {
-        goTo(WaiterState.DINING_AREA);
-
         if (gameWindow != null) {
             gameWindow.getGameState().updateAgentStatus("waiter", "Taking orders");
         }
 
         for (int i = 0; i < 3; i++) {
             if (Math.random() < 0.3) {
-                gameWindow.wait(500);
-                ordersTaken++;
-                IO.println("[Waiter]: I got an order.");
+                work.then(() -> work.sleep(500));
+                work.then(this::takeOrder);
             }
         }
     }
 
-    protected void takeEmptyPlates() {
-        goTo(WaiterState.DINING_AREA);
-
-        // Try to take up to 5 empty plates, but only if they're actually available
-        int attemptsMade = 0;
-        int maxAttempts = 5;
-
-        while (attemptsMade < maxAttempts && restaurant.takenPlates > 0) {
-            if (Math.random() < 0.3) {
-                gameWindow.wait(500);
-                IO.println("[Waiter]: I took an empty plate.");
-                emptyPlatesTaken++;
-                restaurant.takenPlates--; // Decrement taken plates immediately
-            }
-            attemptsMade++;
+    private void takeOrder() {
+        String[] availableDishes = restaurant.getAvailableDishes().toArray(new String[0]);
+        int dishIndex = (int) (Math.random() * availableDishes.length);
+        String dishOrdered = availableDishes[dishIndex];
+
+        // Open a ticket for the order in shared state
+        TicketTable.Ticket ticket = restaurant.addOrder(dishOrdered);
+        if (ticket != null) {
+            ordersTaken.add(ticket);
+            IO.println("[Waiter]: I got an order for " + ticket + ".");
+            logToUI("New order: " + ticket);
+        } else {
+            IO.println("[Waiter]: ERROR - Could not take an order for " + dishOrdered +
+                    " (unknown dish or too many orders waiting)");
         }
     }
 
-    protected void deliverMeals(List<String> mealsToDeliver) {
-        goTo(WaiterState.DINING_AREA);
+    /**
+     * Take empty plates from the tables, we're in the dining area
+     */
+    protected void takeEmptyPlates() {
+        // Try to take up to 5 empty plates, but only if they're actually available
+        takeEmptyPlates(5);
+    }
 
-        if (gameWindow != null) {
-            gameWindow.getGameState().updateAgentStatus("waiter", "Delivering meals");
+    private void takeEmptyPlates(int attemptsLeft) {
+        if (attemptsLeft == 0 || emptyPlatesTaken >= restaurant.getPlates().getServed()) {
+            return;
         }
-
-        for (String meal : mealsToDeliver) {
-            gameWindow.wait(500);
-            IO.println("[Waiter]: Delivering the dish " + meal + " to a table.");
-            logToUI("Delivered " + meal + " to table");
-            // When a meal is delivered, the customer now has a plate
-            restaurant.takenPlates++;
+        if (Math.random() < 0.3) {
+            work.sleep(500);
+            work.then(() -> {
+                IO.println("[Waiter]: I took an empty plate.");
+                emptyPlatesTaken++;
+                takeEmptyPlates(attemptsLeft - 1);
+            });
+        } else {
+            takeEmptyPlates(attemptsLeft - 1);
         }
     }
 
@@ -0,0 +1,102 @@
+package underfried.agents;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import underfried.KitchenStation;
+import underfried.Restaurant;
+import underfried.ui.AgentSprite;
+import underfried.ui.GameWindow;
+
+/**
+ * Moves an agent around the restaurant.
+ * With a game window the agent's sprite is animated and the agent's workflow
+ * continues on the frame it arrives. In headless mode the walk takes
+ * distance / walking speed on the simulation clock instead. Either way the
+ * agent thread is never blocked, the walk is a wait of the workflow's current
+ * step.
+ */
+class Walker {
+    // Stop waiting for a sprite after this much real time, e.g. if it got stuck
+    private static final long MAX_WAIT_MILLIS = 10000;
+
+    private final String spriteName;
+    private final Restaurant restaurant;
+    private final GameWindow gameWindow;
+    private double x, y; // Last known position in tile coordinates
+
+    Walker(String spriteName, Restaurant restaurant, GameWindow gameWindow, double startX, double startY) {
+        this.spriteName = spriteName;
+        this.restaurant = restaurant;
+        this.gameWindow = gameWindow;
+        this.x = startX;
+        this.y = startY;
+    }
+
+    /**
+     * Start walking to a position. The workflow's next step runs once the agent
+     * has arrived.
+     * 
+     * @param work    the workflow of the walking agent
+     * @param targetX x position in tile coordinates
+     * @param targetY y position in tile coordinates
+     * @param status  status shown on the sprite while walking, or null to keep
+     *                the current one
+     */
+    void walkTo(StepBehaviour work, double targetX, double targetY, String status) {
+        if (gameWindow != null) {
+            if (status != null) {
+                gameWindow.getGameState().updateAgentStatus(spriteName, status);
+            }
+            // Sprites move in real frames, so the timeout is in real time rather
+            // than on the simulation clock
+            CompletableFuture<Void> arrival = gameWindow.getGameState().moveAgent(spriteName, targetX, targetY);
+            work.await(arrival.copy().completeOnTimeout(null, MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS));
+        } else {
+            work.sleep(travelMillis(x, y, targetX, targetY));
+        }
+
+        x = targetX;
+        y = targetY;
+    }
+
+    /**
+     * Start walking to a station's standing spot. The workflow's next step runs
+     * once the agent has arrived.
+     * 
+     * @param work    the workflow of the walking agent
+     * @param station the station to walk to
+     * @param status  status shown on the sprite while walking, or null to keep
+     *                the current one
+     */
+    void walkTo(StepBehaviour work, KitchenStation station, String status) {
+        walkTo(work, station.getX(), station.getY(), status);
+    }
+
+    /**
+     * Simulated time needed to walk between two stations
+     * 
+     * @return travel time in simulated milliseconds
+     */
+    static long travelMillis(KitchenStation from, KitchenStation to) {
+        return travelMillis(from.getX(), from.getY(), to.getX(), to.getY());
+    }
+
+    /**
+     * Simulated time needed to walk between two positions
+     * 
+     * @return travel time in simulated milliseconds
+     */
+    static long travelMillis(double fromX, double fromY, double toX, double toY) {
+        double distance = Math.hypot(toX - fromX, toY - fromY);
+        return (long) (distance / AgentSprite.WALK_SPEED * 1000);
+    }
+
+    double getX() {
+        return x;
+    }
+
+    double getY() {
+        return y;
+    }
+}
@@ -1,19 +1,45 @@
 package underfried.ui;
 
 import java.awt.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Visual representation of an agent (NPC) in the game
+ *
+ * Every move returns a future that is completed on the frame the sprite snaps
+ * to its target, so the agent can continue right away instead of polling the
+ * sprite's position.
+ *
+ * Sprites walk WALK_SPEED tiles per second of simulated time, whatever the
+ * frame rate: GameState advances them by the simulated time that passed since
+ * the last frame. Each move's simulated travel time is recorded against the
+ * ideal distance / walking speed, so a lagging game loop would show up as
+ * slower agents.
+ *
+ * Sprites are moved by the simulation loop and read by the agents, so the
+ * UI never draws them directly but from a RenderSnapshot.
  */
 public class AgentSprite {
+    // Walking speed in tiles per simulated second
+    public static final double WALK_SPEED = 3.0;
+
     private String agentName;
     private AgentType type;
     private double x, y; // Position in tile coordinates
     private double targetX, targetY; // Target position for movement
-    private double speed = 0.05; // Movement speed (tiles per frame)
-    private String status; // Current activity status
+    private volatile String status; // Current activity status, set by the agents
     private Color color;
 
+    // The current move, guarded by this
+    private CompletableFuture<Void> arrival = CompletableFuture.completedFuture(null);
+    private long moveStartedAt; // Simulated ms
+    private double moveDistance; // Tiles from the start of the move to its target
+
+    // Travel metrics of finished moves, guarded by this
+    private long moves;
+    private long travelMillis; // Simulated
+    private double idealTravelSeconds;
+
     public enum AgentType {
         CHEF(new Color(255, 100, 100)),
         WAITER(new Color(100, 100, 255)),
@@ -42,59 +68,74 @@ public class AgentSprite {
         this.status = "Idle";
     }
 
-    public void update() {
-        // Smooth movement towards target
-        double dx = targetX - x;
-        double dy = targetY - y;
-        double distance = Math.sqrt(dx * dx + dy * dy);
-
-        if (distance > 0.05) { // Increased threshold to prevent micro-adjustments
-            double moveAmount = Math.min(speed, distance); // Don't overshoot
-            x += (dx / distance) * moveAmount;
-            y += (dy / distance) * moveAmount;
-        } else {
-            // Snap to target when very close to prevent oscillation
-            x = targetX;
-            y = targetY;
+    /**
+     * Walk towards the target for a slice of simulated time
+     *
+     * @param seconds simulated seconds to walk for
+     * @param now     simulated ms at the end of the slice
+     */
+    public void update(double seconds, long now) {
+        CompletableFuture<Void> arrived = null;
+        synchronized (this) {
+            // Smooth movement towards target
+            double dx = targetX - x;
+            double dy = targetY - y;
+            double distance = Math.sqrt(dx * dx + dy * dy);
+
+            if (distance > 0.05) { // Increased threshold to prevent micro-adjustments
+                double moveAmount = Math.min(WALK_SPEED * seconds, distance); // Don't overshoot
+                x += (dx / distance) * moveAmount;
+                y += (dy / distance) * moveAmount;
+                distance -= moveAmount;
+            }
+            if (distance <= 0.05) {
+                // Snap to target when very close to prevent oscillation
+                x = targetX;
+                y = targetY;
+                if (!arrival.isDone()) {
+                    moves++;
+                    travelMillis += now - moveStartedAt;
+                    idealTravelSeconds += moveDistance / WALK_SPEED;
+                    arrived = arrival;
+                }
+            }
+        }
+
+        // Outside the lock, the agent's continuation runs right here
+        if (arrived != null) {
+            arrived.complete(null);
         }
     }
 
-    public void draw(Graphics2D g2d, int tileSize) {
-        int pixelX = (int) (x * tileSize);
-        int pixelY = (int) (y * tileSize);
-        int size = tileSize - 10;
-
-        // Draw shadow
-        g2d.setColor(new Color(0, 0, 0, 50));
-        g2d.fillOval(pixelX + 2, pixelY + size - 5, size, 8);
-
-        // Draw agent body (circle)
-        g2d.setColor(color);
-        g2d.fillOval(pixelX, pixelY, size, size);
-
-        // Draw outline
-        g2d.setColor(Color.BLACK);
-        g2d.setStroke(new BasicStroke(2));
-        g2d.drawOval(pixelX, pixelY, size, size);
-
-        // Draw agent name below
-        g2d.setColor(Color.BLACK);
-        g2d.setFont(new Font("Arial", Font.BOLD, 18));
-        FontMetrics fm = g2d.getFontMetrics();
-        String displayName = agentName;
-        int nameWidth = fm.stringWidth(displayName);
-        g2d.drawString(displayName, pixelX + (size - nameWidth) / 2, pixelY + size + 12);
-
-        // Draw status (if not idle)
-        if (status != null && !status.equals("Idle")) {
-            g2d.setFont(new Font("Arial", Font.PLAIN, 14));
-            fm = g2d.getFontMetrics();
-            int statusWidth = fm.stringWidth(status);
-            g2d.setColor(new Color(255, 255, 255, 200));
-            g2d.fillRoundRect(pixelX + (size - statusWidth) / 2 - 3, pixelY - 15, statusWidth + 6, 12, 4, 4);
-            g2d.setColor(Color.BLACK);
-            g2d.drawString(status, pixelX + (size - statusWidth) / 2, pixelY - 6);
+    /**
+     * Start walking to a position
+     *
+     * @param now simulated ms the move starts
+     * @return completed on the frame the sprite arrives
+     */
+    public CompletableFuture<Void> moveTo(double x, double y, long now) {
+        CompletableFuture<Void> superseded;
+        CompletableFuture<Void> next = new CompletableFuture<>();
+        synchronized (this) {
+            superseded = arrival;
+            arrival = next;
+            targetX = x;
+            targetY = y;
+            moveStartedAt = now;
+            moveDistance = Math.hypot(x - this.x, y - this.y);
         }
+
+        // Whoever waited for the previous target won't get there anymore
+        superseded.complete(null);
+        return next;
+    }
+
+    /**
+     * Copy where the sprite is and what it does right now into the next render
+     * snapshot
+     */
+    synchronized void copyTo(RenderSnapshot.Sprite sprite) {
+        sprite.set(agentName, color, x, y, status);
     }
 
     // Getters and setters
@@ -106,24 +147,19 @@ public class AgentSprite {
         return type;
     }
 
-    public double getX() {
+    public synchronized double getX() {
         return x;
     }
 
-    public double getY() {
+    public synchronized double getY() {
         return y;
     }
 
-    public void setPosition(double x, double y) {
+    public synchronized void setPosition(double x, double y) {
         this.x = x;
         this.y = y;
     }
 
-    public void setTargetPosition(double x, double y) {
-        this.targetX = x;
-        this.targetY = y;
-    }
-
     public String getStatus() {
         return status;
     }
@@ -132,9 +168,31 @@ public class AgentSprite {
         this.status = status;
     }
 
-    public boolean isMoving() {
+    public synchronized boolean isMoving() {
         double dx = targetX - x;
         double dy = targetY - y;
         return Math.sqrt(dx * dx + dy * dy) > 0.05; // Match the threshold in update()
     }
+
+    /**
+     * @return number of moves that arrived
+     */
+    public synchronized long getMoveCount() {
+        return moves;
+    }
+
+    /**
+     * @return simulated seconds the arrived moves took, from the start of the
+     *         move to the frame that saw the sprite arrive
+     */
+    public synchronized double getTravelSeconds() {
+        return travelMillis / 1000.0;
+    }
+
+    /**
+     * @return seconds the arrived moves would take at exactly WALK_SPEED
+     */
+    public synchronized double getIdealTravelSeconds() {
+        return idealTravelSeconds;
+    }
 }
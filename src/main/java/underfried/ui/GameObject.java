@@ -1,15 +1,22 @@
 package underfried.ui;
 
 import java.awt.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents an interactive object in the game (plates, food items, etc.)
+ *
+ * Objects are immutable, so render snapshots can share them
  */
 public class GameObject {
-    private String name;
-    private ObjectType type;
-    private double x, y; // Position in tile coordinates
-    private boolean visible;
+    private final String name;
+    private final ObjectType type;
+    private final double x, y; // Position in tile coordinates
+
+    private static final Stroke BORDER = new BasicStroke(1.5f);
+    // Icon fonts by size, shared by every thread that draws objects
+    private static final Map<Integer, Font> ICON_FONTS = new ConcurrentHashMap<>();
 
     public enum ObjectType {
         CLEAN_PLATE(new Color(255, 255, 255), "🍽️"),
@@ -21,10 +28,12 @@ public class GameObject {
         RAT(new Color(128, 128, 128), "🐀");
 
         private final Color color;
+        private final Color borderColor;
         private final String icon;
 
         ObjectType(Color color, String icon) {
             this.color = color;
+            this.borderColor = color.darker();
             this.icon = icon;
         }
 
@@ -32,6 +41,10 @@ public class GameObject {
             return color;
         }
 
+        public Color getBorderColor() {
+            return borderColor;
+        }
+
         public String getIcon() {
             return icon;
         }
@@ -42,13 +55,9 @@ public class GameObject {
         this.type = type;
         this.x = x;
         this.y = y;
-        this.visible = true;
     }
 
     public void draw(Graphics2D g2d, int tileSize) {
-        if (!visible)
-            return;
-
         int pixelX = (int) (x * tileSize);
         int pixelY = (int) (y * tileSize);
         int size = tileSize / 2;
@@ -58,13 +67,13 @@ public class GameObject {
         g2d.fillOval(pixelX, pixelY, size, size);
 
         // Draw border
-        g2d.setColor(type.getColor().darker());
-        g2d.setStroke(new BasicStroke(1.5f));
+        g2d.setColor(type.getBorderColor());
+        g2d.setStroke(BORDER);
         g2d.drawOval(pixelX, pixelY, size, size);
 
         // Draw icon
         g2d.setColor(Color.BLACK);
-        g2d.setFont(new Font("Segoe UI Emoji", Font.PLAIN, size - 4));
+        g2d.setFont(iconFont(size - 4));
         FontMetrics fm = g2d.getFontMetrics();
         String icon = type.getIcon();
         int iconWidth = fm.stringWidth(icon);
@@ -74,6 +83,10 @@ public class GameObject {
                 pixelY + (size + iconHeight) / 2 - 2);
     }
 
+    private static Font iconFont(int size) {
+        return ICON_FONTS.computeIfAbsent(size, key -> new Font("Segoe UI Emoji", Font.PLAIN, key));
+    }
+
     // Getters and setters
     public String getName() {
         return name;
@@ -90,17 +103,4 @@ public class GameObject {
     public double getY() {
         return y;
     }
-
-    public void setPosition(double x, double y) {
-        this.x = x;
-        this.y = y;
-    }
-
-    public boolean isVisible() {
-        return visible;
-    }
-
-    public void setVisible(boolean visible) {
-        this.visible = visible;
-    }
 }
@@ -3,9 +3,29 @@ package underfried.ui;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Main game panel that renders the top-down view of the restaurant
+ *
+ * The panel only paints. Each frame draws the latest RenderSnapshot published
+ * by the GameState's simulation loop, so a slow frame never holds up the
+ * simulation.
+ *
+ * The floor, walls and stations are pre-rendered into a background image,
+ * which is redrawn only when the station layout or occupancy changes. Frames
+ * copy it and draw just the objects, agents and overlay on top, so their cost
+ * grows with what moves, not with the size of the map.
+ *
+ * Painting a frame allocates next to nothing once the caches are warm. Colors,
+ * fonts and strokes are created once, shapes and text are blitted from
+ * stamps, and the footer and station numbers are laid out again only when
+ * they change. Run with --render-benchmark to measure it.
  */
 public class GamePanel extends JPanel implements ActionListener {
     private static final int TILE_SIZE = 40; // Size of each tile in pixels
@@ -14,6 +34,14 @@ public class GamePanel extends JPanel implements ActionListener {
 
     private Timer gameTimer;
     private GameState gameState;
+    private volatile long framesDrawn; // Only counted on the Event Dispatch Thread
+
+    // Cached static scene, only used on the Event Dispatch Thread
+    private BufferedImage background;
+    private GraphicsConfiguration backgroundConfig; // The screen it was made for
+    private int backgroundStations = -1; // Stations in the layout it shows
+    private long backgroundOccupancy; // Bit i is set if station i is shown occupied
+    private volatile long backgroundRenders;
 
     // Color scheme
     private static final Color FLOOR_COLOR = new Color(230, 220, 200);
@@ -21,52 +49,199 @@ public class GamePanel extends JPanel implements ActionListener {
     private static final Color COUNTER_COLOR = new Color(139, 115, 85);
     private static final Color KITCHEN_FLOOR = new Color(240, 240, 240);
     private static final Color DINING_FLOOR = new Color(250, 235, 215);
+    private static final Color GRID_COLOR = new Color(0, 0, 0, 20);
+    private static final Color WINDOW_COLOR = new Color(50, 50, 50);
+    private static final Stroke OUTER_WALL_STROKE = new BasicStroke(3);
+    private static final Stroke DIVIDER_STROKE = new BasicStroke(2);
+    private static final Color FOOTER_COLOR = new Color(0, 0, 0, 150);
+    private static final Color ALERT_COLOR = new Color(255, 0, 0, 100);
+    private static final Color RAT_WARNING_COLOR = new Color(255, 255, 0, 100);
+    private static final Color SMOKE_COLOR = new Color(100, 100, 100, 80);
+    private static final Color SHADOW_COLOR = new Color(0, 0, 0, 50);
+    private static final Color STATUS_BACKGROUND = new Color(255, 255, 255, 200);
+    private static final Color FIRE_GLOW_COLOR = new Color(255, 100, 0);
+    private static final Color FIRE_CORE_COLOR = new Color(255, 200, 0);
+    private static final Stroke OUTLINE_STROKE = new BasicStroke(2);
+    private static final Stroke RAT_WARNING_STROKE = new BasicStroke(2);
+    private static final int FOOTER_HEIGHT = 30;
+    private static final int SPRITE_SIZE = TILE_SIZE - 10;
+
+    // Fire glow opacity by pulse strength, see drawFireEffect
+    private static final int MAX_PULSE = 60;
+    private static final AlphaComposite[] PULSE = new AlphaComposite[MAX_PULSE + 1];
+    static {
+        for (int pulse = 0; pulse <= MAX_PULSE; pulse++) {
+            PULSE[pulse] = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, pulse / 255f);
+        }
+    }
 
-    public GamePanel(GameState gameState) {
+    // Fonts
+    private static final Font NAME_FONT = new Font("Arial", Font.BOLD, 18);
+    private static final Font STATUS_FONT = new Font("Arial", Font.PLAIN, 14);
+    private static final Font FOOTER_FONT = new Font("Arial", Font.BOLD, 12);
+    private static final Font ALERT_FONT = new Font("Arial", Font.BOLD, 11);
+    private static final Font LABEL_FONT = new Font("Arial", Font.PLAIN, 14);
+    private static final Font STATION_STATS_FONT = new Font("Arial", Font.BOLD, 11);
+
+    // Stamps of the shapes drawn every frame, see Stamp
+    private final Map<Color, Stamp> spriteStamps = new HashMap<>();
+    private final Map<GameObject.ObjectType, Stamp> objectStamps = new EnumMap<>(GameObject.ObjectType.class);
+    private final Stamp[] statusBubbles = new Stamp[GRID_WIDTH * TILE_SIZE]; // By text width
+    private final Stamp fireGlow;
+    private final Stamp fireCore;
+    private final Stamp ratWarning;
+    private final Stamp smoke;
+    private final Stamp footer;
+    private Stamp alertBackground; // Of the current alert line
+
+    // Text, laid out once
+    private final GlyphCache nameText = new GlyphCache(NAME_FONT, Color.BLACK);
+    private final GlyphCache statusText = new GlyphCache(STATUS_FONT, Color.BLACK);
+    private final GlyphCache labelText = new GlyphCache(LABEL_FONT, Color.BLACK);
+    private final GlyphCache.Line footerLine = new GlyphCache.Line(FOOTER_FONT, Color.WHITE);
+    private final GlyphCache.Line travelLine = new GlyphCache.Line(FOOTER_FONT, Color.WHITE);
+    private final GlyphCache.Line alertLine = new GlyphCache.Line(ALERT_FONT, Color.RED);
+    // Per station: in use, queue and wait lines
+    private final List<GlyphCache.Line[]> stationLines = new ArrayList<>();
+
+    /**
+     * @param framesPerSecond frame rate of the render loop. Only the
+     *                        smoothness of the animation depends on it
+     */
+    public GamePanel(GameState gameState, int framesPerSecond) {
         this.gameState = gameState;
 
         setPreferredSize(new Dimension(GRID_WIDTH * TILE_SIZE, GRID_HEIGHT * TILE_SIZE));
         setBackground(FLOOR_COLOR);
         setDoubleBuffered(true);
 
-        // Game loop timer (60 FPS)
-        gameTimer = new Timer(1000 / 60, this);
+        fireGlow = new Stamp(-11, -11, TILE_SIZE + 22, TILE_SIZE + 22, g2d -> {
+            g2d.setColor(FIRE_GLOW_COLOR);
+            g2d.fillOval(-10, -10, TILE_SIZE + 20, TILE_SIZE + 20);
+        });
+        fireCore = new Stamp(-6, -6, TILE_SIZE + 12, TILE_SIZE + 12, g2d -> {
+            g2d.setColor(FIRE_CORE_COLOR);
+            g2d.fillOval(-5, -5, TILE_SIZE + 10, TILE_SIZE + 10);
+        });
+        ratWarning = new Stamp(-7, -7, TILE_SIZE / 2 + 14, TILE_SIZE / 2 + 14, g2d -> {
+            g2d.setColor(RAT_WARNING_COLOR);
+            g2d.setStroke(RAT_WARNING_STROKE);
+            g2d.drawOval(-5, -5, TILE_SIZE / 2 + 10, TILE_SIZE / 2 + 10);
+        });
+        smoke = new Stamp(4, -16, 15, 16, g2d -> {
+            // Small grey puffs
+            g2d.setColor(SMOKE_COLOR);
+            g2d.fillOval(5, -10, 8, 8);
+            g2d.fillOval(10, -15, 6, 6);
+        });
+        footer = new Stamp(0, 0, GRID_WIDTH * TILE_SIZE, FOOTER_HEIGHT, g2d -> {
+            g2d.setColor(FOOTER_COLOR);
+            g2d.fillRect(0, 0, GRID_WIDTH * TILE_SIZE, FOOTER_HEIGHT);
+        });
+
+        // Render loop timer
+        gameTimer = new Timer(1000 / framesPerSecond, this);
         gameTimer.start();
     }
 
     @Override
     public void actionPerformed(ActionEvent e) {
-        // Update game state
-        gameState.update();
         repaint();
     }
 
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        Graphics2D g2d = (Graphics2D) g;
+        render((Graphics2D) g);
+    }
+
+    /**
+     * Draw one frame of the latest snapshot
+     */
+    void render(Graphics2D g2d) {
+        RenderSnapshot frame = gameState.acquireSnapshot();
+        try {
+            render(g2d, frame);
+        } finally {
+            gameState.releaseSnapshot(frame);
+        }
+    }
+
+    private void render(Graphics2D g2d, RenderSnapshot frame) {
+        framesDrawn++;
 
         // Enable anti-aliasing for smoother graphics
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
 
-        // Draw floor tiles
-        drawFloor(g2d);
-
-        // Draw walls and room divisions
-        drawWalls(g2d);
-
-        // Draw kitchen stations
-        drawStations(g2d);
+        // Draw floor, walls and kitchen stations
+        drawBackground(g2d, frame);
 
         // Draw objects (plates, food items)
-        drawObjects(g2d);
+        drawObjects(g2d, frame);
 
         // Draw agents (NPCs)
-        drawAgents(g2d);
+        drawAgents(g2d, frame);
 
         // Draw UI overlays (status, labels)
-        drawOverlay(g2d);
+        drawOverlay(g2d, frame);
+    }
+
+    private void drawBackground(Graphics2D g2d, RenderSnapshot frame) {
+        long occupancy = 0;
+        for (int i = 0; i < frame.stations.size(); i++) {
+            if (frame.stations.get(i).isOccupied()) {
+                occupancy |= 1L << i;
+            }
+        }
+
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        if (background == null || config != backgroundConfig || frame.stations.size() != backgroundStations
+                || occupancy != backgroundOccupancy) {
+            if (background == null || config != backgroundConfig) {
+                background = createBackground(config);
+            }
+            renderBackground(background, frame);
+            backgroundConfig = config;
+            backgroundStations = frame.stations.size();
+            backgroundOccupancy = occupancy;
+            backgroundRenders++;
+        }
+        g2d.drawImage(background, 0, 0, null);
+    }
+
+    /**
+     * Create an image for the static scene in the screen's pixel format
+     */
+    private BufferedImage createBackground(GraphicsConfiguration config) {
+        int width = GRID_WIDTH * TILE_SIZE;
+        int height = GRID_HEIGHT * TILE_SIZE;
+        return config != null
+                ? config.createCompatibleImage(width, height, Transparency.OPAQUE)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Render the static scene into the background image
+     */
+    private void renderBackground(BufferedImage image, RenderSnapshot frame) {
+        Graphics2D g2d = image.createGraphics();
+        try {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.setColor(FLOOR_COLOR);
+            g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+
+            // Draw floor tiles
+            drawFloor(g2d);
+
+            // Draw walls and room divisions
+            drawWalls(g2d);
+
+            // Draw kitchen stations
+            drawStations(g2d, frame);
+        } finally {
+            g2d.dispose();
+        }
     }
 
     private void drawFloor(Graphics2D g2d) {
@@ -79,7 +254,7 @@ public class GamePanel extends JPanel implements ActionListener {
         g2d.fillRect(TILE_SIZE * 10, 0, TILE_SIZE * 10, TILE_SIZE * GRID_HEIGHT);
 
         // Draw grid lines (subtle)
-        g2d.setColor(new Color(0, 0, 0, 20));
+        g2d.setColor(GRID_COLOR);
         for (int x = 0; x <= GRID_WIDTH; x++) {
             g2d.drawLine(x * TILE_SIZE, 0, x * TILE_SIZE, GRID_HEIGHT * TILE_SIZE);
         }
@@ -92,11 +267,11 @@ public class GamePanel extends JPanel implements ActionListener {
         g2d.setColor(WALL_COLOR);
 
         // Outer walls
-        g2d.setStroke(new BasicStroke(3));
+        g2d.setStroke(OUTER_WALL_STROKE);
         g2d.drawRect(0, 0, GRID_WIDTH * TILE_SIZE, GRID_HEIGHT * TILE_SIZE);
 
         // Divider between kitchen and dining area
-        g2d.setStroke(new BasicStroke(2));
+        g2d.setStroke(DIVIDER_STROKE);
         g2d.drawLine(TILE_SIZE * 10, 0, TILE_SIZE * 10, GRID_HEIGHT * TILE_SIZE);
 
         // Counter between kitchen and dining (pass-through window)
@@ -105,18 +280,21 @@ public class GamePanel extends JPanel implements ActionListener {
         g2d.fillRect(TILE_SIZE * 9, counterY, TILE_SIZE * 2, TILE_SIZE * 3);
 
         // Pass-through window
-        g2d.setColor(new Color(50, 50, 50));
+        g2d.setColor(WINDOW_COLOR);
         g2d.fillRect(TILE_SIZE * 10 - 5, counterY + 10, 10, TILE_SIZE * 3 - 20);
     }
 
-    private void drawStations(Graphics2D g2d) {
-        for (Station station : gameState.getStations()) {
-            station.draw(g2d, TILE_SIZE);
+    private void drawStations(Graphics2D g2d, RenderSnapshot frame) {
+        for (RenderSnapshot.StationView view : frame.stations) {
+            view.station.draw(g2d, TILE_SIZE, view.isOccupied());
         }
     }
 
-    private void drawObjects(Graphics2D g2d) {
-        for (GameObject obj : gameState.getObjects()) {
+    // The loops below index the lists, iterators would be garbage
+
+    private void drawObjects(Graphics2D g2d, RenderSnapshot frame) {
+        for (int i = 0; i < frame.objects.size(); i++) {
+            GameObject obj = frame.objects.get(i);
             // Add special effects for environmental conditions
             if (obj.getType() == GameObject.ObjectType.FIRE) {
                 drawFireEffect(g2d, obj);
@@ -126,8 +304,19 @@ public class GamePanel extends JPanel implements ActionListener {
                 drawBurnedFoodEffect(g2d, obj);
             }
 
-            obj.draw(g2d, TILE_SIZE);
+            objectStamp(obj.getType()).draw(g2d, (int) (obj.getX() * TILE_SIZE), (int) (obj.getY() * TILE_SIZE));
+        }
+    }
+
+    private Stamp objectStamp(GameObject.ObjectType type) {
+        Stamp stamp = objectStamps.get(type);
+        if (stamp == null) {
+            int size = TILE_SIZE / 2;
+            stamp = new Stamp(-2, -2, size + 4, size + 4,
+                    g2d -> new GameObject(type.name(), type, 0, 0).draw(g2d, TILE_SIZE));
+            objectStamps.put(type, stamp);
         }
+        return stamp;
     }
 
     private void drawFireEffect(Graphics2D g2d, GameObject fire) {
@@ -138,101 +327,205 @@ public class GamePanel extends JPanel implements ActionListener {
         long time = System.currentTimeMillis();
         int pulse = (int) (Math.sin(time / 200.0) * 30 + 30);
 
-        g2d.setColor(new Color(255, 100, 0, pulse));
-        g2d.fillOval(pixelX - 10, pixelY - 10, TILE_SIZE + 20, TILE_SIZE + 20);
-
-        g2d.setColor(new Color(255, 200, 0, pulse / 2));
-        g2d.fillOval(pixelX - 5, pixelY - 5, TILE_SIZE + 10, TILE_SIZE + 10);
+        Composite composite = g2d.getComposite();
+        g2d.setComposite(PULSE[pulse]);
+        fireGlow.draw(g2d, pixelX, pixelY);
+        g2d.setComposite(PULSE[pulse / 2]);
+        fireCore.draw(g2d, pixelX, pixelY);
+        g2d.setComposite(composite);
     }
 
     private void drawRatEffect(Graphics2D g2d, GameObject rat) {
-        int pixelX = (int) (rat.getX() * TILE_SIZE);
-        int pixelY = (int) (rat.getY() * TILE_SIZE);
-
         // Draw warning circle
-        g2d.setColor(new Color(255, 255, 0, 100));
-        g2d.setStroke(new BasicStroke(2));
-        g2d.drawOval(pixelX - 5, pixelY - 5, TILE_SIZE / 2 + 10, TILE_SIZE / 2 + 10);
+        ratWarning.draw(g2d, (int) (rat.getX() * TILE_SIZE), (int) (rat.getY() * TILE_SIZE));
     }
 
     private void drawBurnedFoodEffect(Graphics2D g2d, GameObject burned) {
         int pixelX = (int) (burned.getX() * TILE_SIZE);
         int pixelY = (int) (burned.getY() * TILE_SIZE);
 
-        // Draw smoke effect (small grey puffs)
-        g2d.setColor(new Color(100, 100, 100, 80));
+        // Draw smoke effect, rising and falling
         long time = System.currentTimeMillis();
         int offset = (int) (Math.sin(time / 300.0) * 5);
-        g2d.fillOval(pixelX + 5, pixelY - 10 + offset, 8, 8);
-        g2d.fillOval(pixelX + 10, pixelY - 15 + offset, 6, 6);
+        smoke.draw(g2d, pixelX, pixelY + offset);
     }
 
-    private void drawAgents(Graphics2D g2d) {
-        for (AgentSprite agent : gameState.getAgents()) {
-            agent.draw(g2d, TILE_SIZE);
+    private void drawAgents(Graphics2D g2d, RenderSnapshot frame) {
+        // Bodies first, then names and statuses, which no agent may cover
+        for (int i = 0; i < frame.sprites.size(); i++) {
+            RenderSnapshot.Sprite sprite = frame.sprites.get(i);
+            spriteStamp(sprite.color).draw(g2d, (int) (sprite.x * TILE_SIZE), (int) (sprite.y * TILE_SIZE));
+        }
+
+        // Draw agent names below
+        for (int i = 0; i < frame.sprites.size(); i++) {
+            RenderSnapshot.Sprite sprite = frame.sprites.get(i);
+            GlyphCache.Glyphs name = nameText.get(g2d, sprite.agentName);
+            name.draw(g2d, (int) (sprite.x * TILE_SIZE) + (SPRITE_SIZE - name.width) / 2,
+                    (int) (sprite.y * TILE_SIZE) + SPRITE_SIZE + 12);
+        }
+
+        // Draw statuses (if not idle) above
+        for (int i = 0; i < frame.sprites.size(); i++) {
+            RenderSnapshot.Sprite sprite = frame.sprites.get(i);
+            if (sprite.status != null && !sprite.status.equals("Idle")) {
+                GlyphCache.Glyphs status = statusText.get(g2d, sprite.status);
+                int x = (int) (sprite.x * TILE_SIZE) + (SPRITE_SIZE - status.width) / 2;
+                int y = (int) (sprite.y * TILE_SIZE);
+                statusBubble(status.width).draw(g2d, x - 3, y - 15);
+                status.draw(g2d, x, y - 6);
+            }
         }
     }
 
-    private void drawOverlay(Graphics2D g2d) {
-        // Draw status information at the bottom (footer)
-        int footerHeight = 30;
-        int footerY = (GRID_HEIGHT * TILE_SIZE) - footerHeight;
+    /**
+     * @return an agent's body with its shadow and outline, placed at its
+     *         top-left corner
+     */
+    private Stamp spriteStamp(Color color) {
+        Stamp stamp = spriteStamps.get(color);
+        if (stamp == null) {
+            stamp = new Stamp(-2, -2, SPRITE_SIZE + 6, SPRITE_SIZE + 6, g2d -> {
+                // Draw shadow
+                g2d.setColor(SHADOW_COLOR);
+                g2d.fillOval(2, SPRITE_SIZE - 5, SPRITE_SIZE, 8);
+
+                // Draw agent body (circle)
+                g2d.setColor(color);
+                g2d.fillOval(0, 0, SPRITE_SIZE, SPRITE_SIZE);
+
+                // Draw outline
+                g2d.setColor(Color.BLACK);
+                g2d.setStroke(OUTLINE_STROKE);
+                g2d.drawOval(0, 0, SPRITE_SIZE, SPRITE_SIZE);
+            });
+            spriteStamps.put(color, stamp);
+        }
+        return stamp;
+    }
 
-        g2d.setColor(new Color(0, 0, 0, 150));
-        g2d.fillRect(0, footerY, GRID_WIDTH * TILE_SIZE, footerHeight);
+    /**
+     * @return the background of a status text, placed at its top-left corner
+     */
+    private Stamp statusBubble(int textWidth) {
+        int width = Math.min(textWidth + 6, statusBubbles.length - 1);
+        if (statusBubbles[width] == null) {
+            statusBubbles[width] = new Stamp(-1, -1, width + 2, 14, g2d -> {
+                g2d.setColor(STATUS_BACKGROUND);
+                g2d.fillRoundRect(0, 0, width, 12, 4, 4);
+            });
+        }
+        return statusBubbles[width];
+    }
 
-        g2d.setColor(Color.WHITE);
-        g2d.setFont(new Font("Arial", Font.BOLD, 12));
+    private void drawOverlay(Graphics2D g2d, RenderSnapshot frame) {
+        // Draw status information at the bottom (footer)
+        int footerY = (GRID_HEIGHT * TILE_SIZE) - FOOTER_HEIGHT;
+        footer.draw(g2d, 0, footerY);
 
         // Display plate counts and environmental conditions
-        String status = String.format("Clean Plates: %d | Dirty Plates: %d | Pending Orders: %d | Ready Dishes: %d",
-                gameState.getRestaurant().cleanPlates,
-                gameState.getRestaurant().dirtyPlates,
-                gameState.getRestaurant().getPendingOrderCount(),
-                gameState.getRestaurant().getReadyDishCount());
+        long plates = (long) frame.cleanPlates << 32 | frame.dirtyPlates;
+        long dishes = (long) frame.pendingOrders << 32 | frame.readyDishes;
+        if (footerLine.isStale(g2d, plates, dishes)) {
+            footerLine.layout(g2d, plates, dishes,
+                    String.format("Clean Plates: %d | Dirty Plates: %d | Pending Orders: %d | Ready Dishes: %d",
+                            frame.cleanPlates, frame.dirtyPlates, frame.pendingOrders, frame.readyDishes));
+        }
+        footerLine.get().draw(g2d, 10, footerY + 20);
 
-        g2d.drawString(status, 10, footerY + 20);
+        // Simulated walking time against the ideal, right-aligned in the footer
+        if (travelLine.isStale(g2d, frame.moves, 0)) {
+            travelLine.layout(g2d, frame.moves, 0, "Travel " + frame.travelSummary);
+        }
+        GlyphCache.Glyphs travel = travelLine.get();
+        travel.draw(g2d, GRID_WIDTH * TILE_SIZE - travel.width - 10, footerY + 20);
 
         // Display environmental conditions warnings if any (above the footer, at the
         // top)
-        int fires = gameState.getRestaurant().getConditionCount(underfried.Restaurant.EnvironmentalCondition.FIRE);
-        int rats = gameState.getRestaurant().getConditionCount(underfried.Restaurant.EnvironmentalCondition.RAT);
-        int burned = gameState.getRestaurant()
-                .getConditionCount(underfried.Restaurant.EnvironmentalCondition.BURNED_FOOD);
+        int fires = frame.fires;
+        int rats = frame.rats;
+        int burned = frame.burnedFood;
 
         if (fires > 0 || rats > 0 || burned > 0) {
-            g2d.setColor(Color.RED);
-            g2d.setFont(new Font("Arial", Font.BOLD, 11));
-            String warnings = "ALERTS: ";
-            if (fires > 0)
-                warnings += "Fire x" + fires + " ";
-            if (rats > 0)
-                warnings += "Rat x" + rats + " ";
-            if (burned > 0)
-                warnings += "Burned x" + burned + " ";
-
-            // Draw alerts at the top of the screen with a semi-transparent background
-            int alertWidth = g2d.getFontMetrics().stringWidth(warnings) + 20;
-            g2d.setColor(new Color(255, 0, 0, 100));
-            g2d.fillRect(5, 5, alertWidth, 20);
+            long alerts = (long) fires << 42 | (long) rats << 21 | burned;
+            if (alertLine.isStale(g2d, alerts, 0)) {
+                String warnings = "ALERTS: ";
+                if (fires > 0)
+                    warnings += "Fire x" + fires + " ";
+                if (rats > 0)
+                    warnings += "Rat x" + rats + " ";
+                if (burned > 0)
+                    warnings += "Burned x" + burned + " ";
+                alertLine.layout(g2d, alerts, 0, warnings);
+
+                // Semi-transparent background as wide as the alerts
+                int alertWidth = alertLine.get().width + 20;
+                alertBackground = new Stamp(0, 0, alertWidth, 20, background -> {
+                    background.setColor(ALERT_COLOR);
+                    background.fillRect(0, 0, alertWidth, 20);
+                });
+            }
 
-            g2d.setColor(Color.RED);
-            g2d.drawString(warnings, 10, 20);
+            // Draw alerts at the top of the screen
+            alertBackground.draw(g2d, 5, 5);
+            alertLine.get().draw(g2d, 10, 20);
         }
 
         // Draw station labels
-        g2d.setFont(new Font("Arial", Font.PLAIN, 10));
-        for (Station station : gameState.getStations()) {
+        for (int i = 0; i < frame.stations.size(); i++) {
+            Station station = frame.stations.get(i).station;
             if (station.getLabel() != null) {
+                labelText.get(g2d, station.getLabel()).draw(g2d, (int) (station.getX() * TILE_SIZE) + 2,
+                        (int) (station.getY() * TILE_SIZE - 5));
+            }
+        }
+
+        // Occupancy, queue and average wait inside the station
+        while (stationLines.size() < frame.stations.size()) {
+            GlyphCache.Line[] lines = new GlyphCache.Line[3];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = new GlyphCache.Line(STATION_STATS_FONT, Color.WHITE);
+            }
+            stationLines.add(lines);
+        }
+        for (int i = 0; i < frame.stations.size(); i++) {
+            RenderSnapshot.StationView view = frame.stations.get(i);
+            Station station = view.station;
+            if (station.getLabel() != null && view.hasResource) {
                 int x = (int) (station.getX() * TILE_SIZE);
                 int y = (int) (station.getY() * TILE_SIZE - 5);
-                g2d.setColor(Color.BLACK);
-                g2d.setFont(new Font("Arial", Font.PLAIN, 14));
-                g2d.drawString(station.getLabel(), x + 2, y);
+                GlyphCache.Line[] lines = stationLines.get(i);
+                if (lines[0].isStale(g2d, view.inUse, view.capacity)) {
+                    lines[0].layout(g2d, view.inUse, view.capacity, view.inUse + "/" + view.capacity + " used");
+                }
+                if (lines[1].isStale(g2d, view.queueLength, 0)) {
+                    lines[1].layout(g2d, view.queueLength, 0, "queue " + view.queueLength);
+                }
+                if (lines[2].isStale(g2d, view.averageWaitMillis, 0)) {
+                    lines[2].layout(g2d, view.averageWaitMillis, 0,
+                            String.format("wait %.1fs", view.averageWaitMillis / 1000.0));
+                }
+                lines[0].get().draw(g2d, x + 6, y + 5 + TILE_SIZE - 6);
+                lines[1].get().draw(g2d, x + 6, y + 5 + TILE_SIZE + 7);
+                lines[2].get().draw(g2d, x + 6, y + 5 + TILE_SIZE + 20);
             }
         }
     }
 
+    /**
+     * @return number of frames painted so far
+     */
+    public long getFramesDrawn() {
+        return framesDrawn;
+    }
+
+    /**
+     * @return number of times the static background was rendered
+     */
+    public long getBackgroundRenders() {
+        return backgroundRenders;
+    }
+
     public void stopGameLoop() {
         if (gameTimer != null) {
             gameTimer.stop();
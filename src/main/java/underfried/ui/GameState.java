@@ -1,19 +1,44 @@
 package underfried.ui;
 
+import underfried.HazardSpawner;
+import underfried.KitchenStation;
 import underfried.Restaurant;
 import underfried.ui.AgentSprite.AgentType;
 import underfried.ui.Station.StationType;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Manages the game state and synchronizes with JADE agents
+ *
+ * The game state is updated on its own simulation loop thread, TICK_MILLIS
+ * apart, never on the Event Dispatch Thread. Every tick ends by publishing a
+ * RenderSnapshot, which is all GamePanel paints. The two snapshot buffers are
+ * reused and swapped, and one is never written while it is painted. Painting
+ * and updating therefore never wait for each other, and only the simulation
+ * loop touches the stations and objects.
+ *
+ * Sprites are moved by the simulated time that passed since the previous
+ * tick, in fixed steps of MOVE_STEP_SECONDS. A tick that comes late runs
+ * several steps to catch up, so the agents walking the sprites don't slow down
+ * when the loop does.
  */
 public class GameState {
+    // Real ms between ticks of the simulation loop
+    private static final long TICK_MILLIS = 1000 / 60;
+    // Simulated seconds sprites move per step
+    private static final double MOVE_STEP_SECONDS = 1.0 / 60;
+    // Most steps one tick runs, the rest of a longer gap is walked in one go
+    private static final int MAX_CATCH_UP_STEPS = 240;
+
     private Restaurant restaurant;
     private List<AgentSprite> agents;
     private List<Station> stations;
@@ -21,13 +46,19 @@ public class GameState {
     private Map<String, AgentSprite> agentMap;
 
     // Environmental condition management
-    private Random random;
-    private long lastFireCheck;
-    private long lastRatCheck;
-    private static final long FIRE_CHECK_INTERVAL = 8000; // Check every 30 seconds
-    private static final long RAT_CHECK_INTERVAL = 15000; // Check every 45 seconds
-    private static final double FIRE_PROBABILITY = 0.15; // 15% chance
-    private static final double RAT_PROBABILITY = 0.20; // 20% chance
+    private HazardSpawner hazardSpawner;
+
+    // Simulation loop
+    private ScheduledExecutorService simulationLoop;
+    private final RenderSnapshot[] snapshots = { new RenderSnapshot(), new RenderSnapshot() };
+    private volatile RenderSnapshot snapshot = snapshots[0]; // Front buffer, the latest published
+    private volatile long skippedSnapshots; // Ticks whose back buffer was still being painted
+
+    // Movement time keeping, only touched by update()
+    private long lastUpdateAt = -1; // Simulated ms of the previous tick, -1 before the first
+    private double pendingSeconds; // Simulated time not yet walked
+    private volatile long ticks;
+    private volatile long catchUpSteps; // Steps beyond the first of a tick
 
     // Predefined positions for agents and stations
     private static final double CHEF_START_X = 2.5;
@@ -41,24 +72,27 @@ public class GameState {
 
     public GameState(Restaurant restaurant) {
         this.restaurant = restaurant;
-        this.agents = new ArrayList<>();
+        // Sprites can be added by agents while the simulation loop runs
+        this.agents = new CopyOnWriteArrayList<>();
         this.stations = new ArrayList<>();
         this.objects = new ArrayList<>();
-        this.agentMap = new HashMap<>();
-        this.random = new Random();
-        this.lastFireCheck = System.currentTimeMillis();
-        this.lastRatCheck = System.currentTimeMillis();
+        this.agentMap = new ConcurrentHashMap<>();
+        this.hazardSpawner = new HazardSpawner(restaurant);
 
         initializeStations();
         initializeAgents();
     }
 
     private void initializeStations() {
-        // Kitchen stations
-        stations.add(new Station("Cooking", StationType.COOKING_STATION, 1, 1, 2, 2));
-        stations.add(new Station("Cutting", StationType.CUTTING_STATION, 4, 1, 2, 2));
-        stations.add(new Station("Prep", StationType.PREP_STATION, 7, 1, 2, 2));
-        stations.add(new Station("Washing", StationType.WASHING_STATION, 7, 10, 2, 2));
+        // Kitchen stations, linked to the slots agents reserve on them
+        stations.add(kitchenStation(new Station("Cooking", StationType.COOKING_STATION, 1, 1, 2, 2),
+                KitchenStation.COOKING));
+        stations.add(kitchenStation(new Station("Cutting", StationType.CUTTING_STATION, 4, 1, 2, 2),
+                KitchenStation.CUTTING));
+        stations.add(kitchenStation(new Station("Prep", StationType.PREP_STATION, 7, 1, 2, 2),
+                KitchenStation.PREP));
+        stations.add(kitchenStation(new Station("Washing", StationType.WASHING_STATION, 7, 10, 2, 2),
+                KitchenStation.WASHING));
 
         // Pass-through counter
         stations.add(new Station("Counter", StationType.COUNTER, 9, 6, 2, 3));
@@ -98,70 +132,133 @@ public class GameState {
         agentMap.put("dishWasher", dishWasher);
     }
 
-    public void update() {
-        // Update all agents
-        for (AgentSprite agent : agents) {
-            agent.update();
+    private Station kitchenStation(Station station, KitchenStation resource) {
+        station.setResource(restaurant.getStation(resource));
+        return station;
+    }
+
+    /**
+     * Start updating the game state on the simulation loop thread
+     */
+    public synchronized void startSimulationLoop() {
+        if (simulationLoop != null) {
+            return;
         }
+        simulationLoop = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "game-simulation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        simulationLoop.scheduleAtFixedRate(this::tick, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
 
-        // Check for environmental conditions
-        checkForEnvironmentalConditions();
+    public synchronized void stopSimulationLoop() {
+        if (simulationLoop != null) {
+            simulationLoop.shutdownNow();
+            simulationLoop = null;
+        }
+    }
 
-        // Update condition game objects
-        syncConditionObjects();
+    /**
+     * Run one tick of the simulation loop: update, then publish a snapshot.
+     * Called by the loop, or directly when there is none.
+     */
+    void tick() {
+        try {
+            update();
+            publishSnapshot();
+        } catch (RuntimeException e) {
+            // An exception would cancel all further ticks
+            e.printStackTrace();
+        }
     }
 
     /**
-     * Periodically check and spawn environmental conditions (fire, rats)
+     * Advance the game state by the simulated time since the previous update.
+     * Called by the simulation loop, or directly when there is none.
      */
-    private void checkForEnvironmentalConditions() {
-        long currentTime = System.currentTimeMillis();
-
-        // Check for fire spawning
-        if (currentTime - lastFireCheck > FIRE_CHECK_INTERVAL) {
-            lastFireCheck = currentTime;
-            if (random.nextDouble() < FIRE_PROBABILITY) {
-                spawnFire();
-            }
+    public void update() {
+        // Move the agents by the simulated time since the last tick
+        long now = restaurant.getClock().now();
+        if (lastUpdateAt >= 0) {
+            pendingSeconds += (now - lastUpdateAt) / 1000.0;
         }
+        lastUpdateAt = now;
+        ticks++;
 
-        // Check for rat spawning
-        if (currentTime - lastRatCheck > RAT_CHECK_INTERVAL) {
-            lastRatCheck = currentTime;
-            if (random.nextDouble() < RAT_PROBABILITY) {
-                spawnRat();
+        int steps = 0;
+        while (pendingSeconds >= MOVE_STEP_SECONDS && steps < MAX_CATCH_UP_STEPS) {
+            for (AgentSprite agent : agents) {
+                agent.update(MOVE_STEP_SECONDS, now);
+            }
+            pendingSeconds -= MOVE_STEP_SECONDS;
+            steps++;
+        }
+        if (pendingSeconds >= MOVE_STEP_SECONDS) {
+            // Far behind, e.g. the virtual clock jumped. Walking in a straight
+            // line, one long step ends up in the same place
+            for (AgentSprite agent : agents) {
+                agent.update(pendingSeconds, now);
             }
+            pendingSeconds = 0;
         }
+        catchUpSteps += Math.max(0, steps - 1);
+
+        // Check for environmental conditions
+        hazardSpawner.update();
+
+        // Update condition game objects
+        syncConditionObjects();
     }
 
     /**
-     * Spawn a fire at a random cooking station
+     * Copy what GamePanel draws into the back buffer and swap it to the front,
+     * unless it is still being painted
      */
-    private void spawnFire() {
-        // Fire can spawn at cooking or cutting stations
-        double[][] fireLocations = {
-                { 2.0, 2.0 }, // Cooking station
-                { 5.0, 2.0 } // Cutting station
-        };
-
-        int locationIndex = random.nextInt(fireLocations.length);
-        double x = fireLocations[locationIndex][0];
-        double y = fireLocations[locationIndex][1];
-
-        restaurant.addCondition(Restaurant.EnvironmentalCondition.FIRE, x, y);
-        System.out.println("[GameState] Fire started at location (" + x + ", " + y + ")!");
+    private void publishSnapshot() {
+        RenderSnapshot front = snapshot;
+        RenderSnapshot back = front == snapshots[0] ? snapshots[1] : snapshots[0];
+        if (back.readers.get() > 0) {
+            // Painted since before the last swap, try again next tick
+            skippedSnapshots++;
+            return;
+        }
+
+        back.clear(ticks);
+        for (int i = 0; i < agents.size(); i++) {
+            agents.get(i).copyTo(back.addSprite());
+        }
+        for (int i = 0; i < stations.size(); i++) {
+            back.addStation(stations.get(i));
+        }
+        for (int i = 0; i < objects.size(); i++) {
+            back.addObject(objects.get(i));
+        }
+        // The summary only changes when a move arrives
+        long moves = getMoveCount();
+        String travel = front.tick >= 0 && front.moves == moves ? front.travelSummary : getTravelSummary();
+        back.setFooter(restaurant, moves, travel);
+        snapshot = back;
     }
 
     /**
-     * Spawn a rat at a random location in the dining area
+     * Get the latest snapshot published by the simulation loop and keep the
+     * loop from writing to it until releaseSnapshot() is called
      */
-    private void spawnRat() {
-        // Rat can spawn anywhere in the dining area (x: 10-20, y: 0-14)
-        double x = 10 + random.nextDouble() * 10;
-        double y = random.nextDouble() * 14;
+    RenderSnapshot acquireSnapshot() {
+        while (true) {
+            RenderSnapshot front = snapshot;
+            front.readers.incrementAndGet();
+            if (front == snapshot) {
+                return front;
+            }
+            // Swapped meanwhile, the loop may be writing to it
+            front.readers.decrementAndGet();
+        }
+    }
 
-        restaurant.addCondition(Restaurant.EnvironmentalCondition.RAT, x, y);
-        System.out.println("[GameState] Rat appeared at location (" + x + ", " + y + ")!");
+    void releaseSnapshot(RenderSnapshot frame) {
+        frame.readers.decrementAndGet();
     }
 
     /**
@@ -170,66 +267,85 @@ public class GameState {
     private void syncConditionObjects() {
         // Remove resolved condition objects
         objects.removeIf(obj -> {
-            if (obj.getType() == GameObject.ObjectType.FIRE ||
-                    obj.getType() == GameObject.ObjectType.RAT ||
-                    obj.getType() == GameObject.ObjectType.BURNED_FOOD) {
-
+            Restaurant.EnvironmentalCondition conditionType = getConditionType(obj.getType());
+            if (conditionType != null) {
                 // Check if this condition is still active
-                boolean stillActive = false;
-                for (Restaurant.ActiveCondition condition : restaurant.activeConditions) {
-                    if (!condition.resolved &&
-                            Math.abs(obj.getX() - condition.x) < 0.1 &&
-                            Math.abs(obj.getY() - condition.y) < 0.1) {
-                        stillActive = true;
-                        break;
-                    }
-                }
-                return !stillActive;
+                return restaurant.findCondition(conditionType, obj.getX(), obj.getY(), 0.1) == null;
             }
             return false;
         });
 
         // Add new condition objects
-        for (Restaurant.ActiveCondition condition : restaurant.activeConditions) {
-            if (!condition.resolved) {
-                // Check if we already have a GameObject for this condition
-                boolean hasObject = false;
-                for (GameObject obj : objects) {
-                    if (Math.abs(obj.getX() - condition.x) < 0.1 &&
-                            Math.abs(obj.getY() - condition.y) < 0.1) {
-                        hasObject = true;
-                        break;
-                    }
+        restaurant.forEachCondition(condition -> {
+            GameObject.ObjectType objectType = getObjectType(condition.type);
+
+            // Check if we already have a GameObject for this condition
+            for (GameObject obj : objects) {
+                if (obj.getType() == objectType &&
+                        Math.abs(obj.getX() - condition.x) < 0.1 &&
+                        Math.abs(obj.getY() - condition.y) < 0.1) {
+                    return;
                 }
+            }
 
-                if (!hasObject) {
-                    GameObject.ObjectType objectType = null;
-                    String name = "";
-
-                    switch (condition.type) {
-                        case FIRE:
-                            objectType = GameObject.ObjectType.FIRE;
-                            name = "Fire";
-                            break;
-                        case RAT:
-                            objectType = GameObject.ObjectType.RAT;
-                            name = "Rat";
-                            break;
-                        case BURNED_FOOD:
-                            objectType = GameObject.ObjectType.BURNED_FOOD;
-                            name = "Burned " + (condition.affectedItem != null ? condition.affectedItem : "food");
-                            break;
-                    }
-
-                    if (objectType != null) {
-                        objects.add(new GameObject(name, objectType, condition.x, condition.y));
-                    }
-                }
+            String name = "";
+            switch (condition.type) {
+                case FIRE:
+                    name = "Fire";
+                    break;
+                case RAT:
+                    name = "Rat";
+                    break;
+                case BURNED_FOOD:
+                    name = "Burned " + (condition.affectedItem != null ? condition.affectedItem : "food");
+                    break;
             }
+            objects.add(new GameObject(name, objectType, condition.x, condition.y));
+        });
+    }
+
+    private static GameObject.ObjectType getObjectType(Restaurant.EnvironmentalCondition conditionType) {
+        switch (conditionType) {
+            case FIRE:
+                return GameObject.ObjectType.FIRE;
+            case RAT:
+                return GameObject.ObjectType.RAT;
+            case BURNED_FOOD:
+                return GameObject.ObjectType.BURNED_FOOD;
+            default:
+                return null;
+        }
+    }
+
+    private static Restaurant.EnvironmentalCondition getConditionType(GameObject.ObjectType objectType) {
+        switch (objectType) {
+            case FIRE:
+                return Restaurant.EnvironmentalCondition.FIRE;
+            case RAT:
+                return Restaurant.EnvironmentalCondition.RAT;
+            case BURNED_FOOD:
+                return Restaurant.EnvironmentalCondition.BURNED_FOOD;
+            default:
+                return null;
         }
+    }
 
-        // Clean up resolved conditions from restaurant
-        restaurant.cleanupResolvedConditions();
+    /**
+     * Add a sprite for an agent that is not part of the default crew (e.g. extra
+     * chefs). Does nothing if the agent already has a sprite.
+     * 
+     * @param agentName local name of the agent
+     * @param label     name shown under the sprite
+     * @param type      kind of agent
+     * @param x         starting x position in tile coordinates
+     * @param y         starting y position in tile coordinates
+     */
+    public void addAgent(String agentName, String label, AgentType type, double x, double y) {
+        agentMap.computeIfAbsent(agentName, name -> {
+            AgentSprite sprite = new AgentSprite(label, type, x, y);
+            agents.add(sprite);
+            return sprite;
+        });
     }
 
     public void updateAgentStatus(String agentName, String status) {
@@ -239,28 +355,59 @@ public class GameState {
         }
     }
 
-    public void moveAgent(String agentName, double x, double y) {
+    /**
+     * Start walking an agent's sprite to a position
+     *
+     * @return completed on the frame the sprite arrives, right away if there is
+     *         no such sprite
+     */
+    public CompletableFuture<Void> moveAgent(String agentName, double x, double y) {
         AgentSprite agent = agentMap.get(agentName);
-        if (agent != null) {
-            agent.setTargetPosition(x, y);
+        if (agent == null) {
+            return CompletableFuture.completedFuture(null);
         }
+        return agent.moveTo(x, y, restaurant.getClock().now());
     }
 
-    // Getters
-    public Restaurant getRestaurant() {
-        return restaurant;
+    /**
+     * @return number of sprite moves that arrived
+     */
+    public long getMoveCount() {
+        long moves = 0;
+        for (AgentSprite agent : agents) {
+            moves += agent.getMoveCount();
+        }
+        return moves;
     }
 
-    public List<AgentSprite> getAgents() {
-        return agents;
+    /**
+     * Get a one-line summary of how long the sprites' moves took in simulated
+     * time against their ideal travel time at walking speed
+     */
+    public String getTravelSummary() {
+        long moves = 0;
+        double travel = 0;
+        double ideal = 0;
+        for (AgentSprite agent : agents) {
+            moves += agent.getMoveCount();
+            travel += agent.getTravelSeconds();
+            ideal += agent.getIdealTravelSeconds();
+        }
+        return String.format("moves: %d, travel: %.1fs, ideal: %.1fs (%+.1f%%)", moves, travel, ideal,
+                ideal == 0 ? 0.0 : (travel - ideal) / ideal * 100);
     }
 
-    public List<Station> getStations() {
-        return stations;
+    /**
+     * Get a one-line summary of how many ticks the simulation loop ran and how
+     * many movement steps late ticks had to catch up
+     */
+    public String getLoopSummary() {
+        return "ticks: " + ticks + ", catch-up steps: " + catchUpSteps + ", skipped snapshots: " + skippedSnapshots;
     }
 
-    public List<GameObject> getObjects() {
-        return objects;
+    // Getters
+    public Restaurant getRestaurant() {
+        return restaurant;
     }
 
     public AgentSprite getAgent(String name) {
@@ -285,10 +432,9 @@ public class GameState {
      * @param y y position in tile coordinates
      */
     public void resolveConditionAt(double x, double y) {
-        for (Restaurant.ActiveCondition condition : restaurant.activeConditions) {
-            if (!condition.resolved &&
-                    Math.abs(condition.x - x) < 1.5 &&
-                    Math.abs(condition.y - y) < 1.5) {
+        for (Restaurant.EnvironmentalCondition type : Restaurant.EnvironmentalCondition.values()) {
+            Restaurant.ActiveCondition condition;
+            while ((condition = restaurant.findCondition(type, x, y, 1.5)) != null) {
                 restaurant.resolveCondition(condition);
                 System.out.println("[GameState] Resolved " + condition.type.getDisplayName() +
                         " at (" + x + ", " + y + ")");
@@ -1,9 +1,9 @@
 package underfried.ui;
 
+import underfried.IO;
 import underfried.Restaurant;
 import javax.swing.*;
 import java.awt.*;
-import underfried.IO;
 
 /**
  * Main window for the restaurant simulation game
@@ -19,11 +19,17 @@ public class GameWindow extends JFrame {
     private JCheckBox showChef, showWaiter, showDishPreparer, showDishWasher, showSystem;
     private java.util.List<String> allLogs;
 
-    public GameWindow(Restaurant restaurant) {
+    private final int framesPerSecond;
+
+    public GameWindow(Restaurant restaurant, int framesPerSecond) {
         this.gameState = new GameState(restaurant);
+        this.framesPerSecond = framesPerSecond;
         this.allLogs = new java.util.ArrayList<>();
 
         initializeUI();
+
+        // The panel paints what the simulation loop publishes
+        gameState.startSimulationLoop();
     }
 
     private void initializeUI() {
@@ -32,7 +38,7 @@ public class GameWindow extends JFrame {
         setLayout(new BorderLayout());
 
         // Create game panel
-        gamePanel = new GamePanel(gameState);
+        gamePanel = new GamePanel(gameState, framesPerSecond);
         add(gamePanel, BorderLayout.CENTER);
 
         // Create side panel with log and filters
@@ -164,46 +170,6 @@ public class GameWindow extends JFrame {
         }
     }
 
-    public void wait(int milliseconds) {
-        try {
-            Thread.sleep(milliseconds);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-    }
-
-    public void waitUntilArrived(String agentName, double targetX, double targetY) {
-        final double ARRIVAL_THRESHOLD = 0.1; // Consider arrived if within 0.1 units
-        final int MAX_WAIT_TIME = 10000; // Maximum 10 seconds wait
-        final int CHECK_INTERVAL = 100; // Check every 100ms
-
-        long startTime = System.currentTimeMillis();
-
-        while (System.currentTimeMillis() - startTime < MAX_WAIT_TIME) {
-            // Get current agent position from GameState
-            double currentX = this.getGameState().getAgent(agentName).getX();
-            double currentY = this.getGameState().getAgent(agentName).getY();
-
-            // Calculate distance to target
-            double distance = Math.sqrt(
-                    Math.pow(targetX - currentX, 2) +
-                            Math.pow(targetY - currentY, 2));
-
-            // Check if arrived
-            if (distance < ARRIVAL_THRESHOLD) {
-                String capitalizedName = agentName.substring(0, 1).toUpperCase() + agentName.substring(1);
-                IO.println(capitalizedName, "Arrived at destination (" + targetX + ", " + targetY + ")");
-                return;
-            }
-
-            // Wait a bit before checking again
-            wait(CHECK_INTERVAL);
-        }
-
-        // Timeout - agent took too long to arrive
-        IO.println("Chef", "WARNING - Timeout waiting to arrive at (" + targetX + ", " + targetY + ")");
-    }
-
     public GameState getGameState() {
         return gameState;
     }
@@ -212,5 +178,10 @@ public class GameWindow extends JFrame {
         if (gamePanel != null) {
             gamePanel.stopGameLoop();
         }
+        gameState.stopSimulationLoop();
+        IO.println("System", "Travel: " + gameState.getTravelSummary());
+        IO.println("System", "Simulation loop: " + gameState.getLoopSummary() +
+                (gamePanel != null ? ", frames drawn: " + gamePanel.getFramesDrawn() +
+                        ", background redraws: " + gamePanel.getBackgroundRenders() : ""));
     }
 }
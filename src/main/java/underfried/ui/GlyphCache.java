@@ -0,0 +1,120 @@
+package underfried.ui;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Laid-out strings of one font and color, so painting a frame neither lays
+ * out text nor allocates.
+ *
+ * Each string is laid out once as a glyph vector and rendered into a Stamp,
+ * which frames blit. Drawing the glyph vectors themselves would still make
+ * Java2D set up the font again whenever the font changes, which allocates
+ * every time. Glyphs are kept for the MAX_ENTRIES most recently drawn strings,
+ * plenty for the names, labels and statuses on screen. Text built from
+ * changing numbers goes in a Line instead, which is laid out again only when
+ * its numbers change, so the string is only built then too. Only used while
+ * painting.
+ */
+final class GlyphCache {
+    private static final int MAX_ENTRIES = 256;
+
+    /**
+     * A laid-out string
+     */
+    static final class Glyphs {
+        final GlyphVector vector;
+        final int width; // Advance, like FontMetrics.stringWidth
+        private final Stamp stamp;
+
+        Glyphs(Font font, Color color, FontRenderContext context, String text) {
+            this.vector = font.createGlyphVector(context, text);
+            this.width = (int) Math.round(vector.getLogicalBounds().getWidth());
+            Rectangle bounds = vector.getPixelBounds(context, 0, 0);
+            this.stamp = new Stamp(bounds.x - 1, bounds.y - 1, bounds.width + 2, bounds.height + 2, g2d -> {
+                g2d.setColor(color);
+                g2d.drawGlyphVector(vector, 0, 0);
+            });
+        }
+
+        /**
+         * Draw the text with its baseline starting at (x, y), like drawString
+         */
+        void draw(Graphics2D g2d, int x, int y) {
+            stamp.draw(g2d, x, y);
+        }
+    }
+
+    /**
+     * A line of text showing up to two numbers, laid out again only when they
+     * change
+     */
+    static final class Line {
+        private final Font font;
+        private final Color color;
+        private FontRenderContext context;
+        private long first;
+        private long second;
+        private Glyphs glyphs;
+
+        Line(Font font, Color color) {
+            this.font = font;
+            this.color = color;
+        }
+
+        /**
+         * @return true if the line has to be laid out again for these numbers
+         */
+        boolean isStale(Graphics2D g2d, long first, long second) {
+            return glyphs == null || this.first != first || this.second != second
+                    || !g2d.getFontRenderContext().equals(context);
+        }
+
+        void layout(Graphics2D g2d, long first, long second, String text) {
+            this.context = g2d.getFontRenderContext();
+            this.first = first;
+            this.second = second;
+            this.glyphs = new Glyphs(font, color, context, text);
+        }
+
+        Glyphs get() {
+            return glyphs;
+        }
+    }
+
+    private final Font font;
+    private final Color color;
+    private FontRenderContext context;
+    private final Map<String, Glyphs> glyphs = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Glyphs> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    GlyphCache(Font font, Color color) {
+        this.font = font;
+        this.color = color;
+    }
+
+    /**
+     * @return the glyphs of the text, laid out now if they weren't cached for
+     *         this render context
+     */
+    Glyphs get(Graphics2D g2d, String text) {
+        FontRenderContext context = g2d.getFontRenderContext();
+        if (!context.equals(this.context)) {
+            glyphs.clear();
+            this.context = context;
+        }
+        Glyphs cached = glyphs.get(text);
+        if (cached == null) {
+            cached = new Glyphs(font, color, context, text);
+            glyphs.put(text, cached);
+        }
+        return cached;
+    }
+}
@@ -0,0 +1,85 @@
+package underfried.ui;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+
+import underfried.IO;
+import underfried.Restaurant;
+import underfried.ui.AgentSprite.AgentType;
+
+/**
+ * Measures what painting a frame of the game window costs, without opening
+ * it: GamePanel renders a running simulation loop into an offscreen image,
+ * with agents walking between the kitchen and the dining area and one hazard
+ * of each kind. Reports the average time and the bytes the painting thread
+ * allocated per frame, which should stay near zero.
+ *
+ * Started with --render-benchmark=FRAMES instead of the simulation.
+ */
+public final class RenderBenchmark {
+    private static final int AGENTS = 8;
+
+    private RenderBenchmark() {
+    }
+
+    /**
+     * Render frames as fast as possible and print the results
+     *
+     * @param frames number of frames to measure, after as many again to warm up
+     */
+    public static void run(Restaurant restaurant, int frames) {
+        GameState gameState = new GameState(restaurant);
+        AgentType[] types = AgentType.values();
+        for (int i = 0; i < AGENTS; i++) {
+            String name = "agent" + i;
+            gameState.addAgent(name, "Agent" + i, types[i % types.length], 1 + i, 3);
+            walk(gameState, name, i, 1 + i, 3);
+        }
+        restaurant.addCondition(Restaurant.EnvironmentalCondition.FIRE, 2.0, 2.0);
+        restaurant.addCondition(Restaurant.EnvironmentalCondition.RAT, 14.0, 9.0);
+        restaurant.addBurnedFood(5.0, 2.0, "Burger");
+        gameState.startSimulationLoop();
+
+        GamePanel panel = new GamePanel(gameState, 60);
+        panel.stopGameLoop(); // We paint ourselves
+        BufferedImage image = new BufferedImage(panel.getPreferredSize().width, panel.getPreferredSize().height,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        try {
+            for (int i = 0; i < frames; i++) {
+                panel.render(g2d);
+            }
+
+            long redrawsBefore = panel.getBackgroundRenders();
+            long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                panel.render(g2d);
+            }
+            long nanos = System.nanoTime() - start;
+            long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+            IO.println("System", String.format(
+                    "Render benchmark: %d frames, %.1f us/frame, %d bytes allocated/frame, background redraws: %d",
+                    frames, nanos / 1000.0 / frames, allocated / frames,
+                    panel.getBackgroundRenders() - redrawsBefore));
+        } finally {
+            g2d.dispose();
+            gameState.stopSimulationLoop();
+        }
+    }
+
+    /**
+     * Keep an agent walking to the dining area and back, with a new status
+     * every walk
+     */
+    private static void walk(GameState gameState, String name, int walks, double homeX, double homeY) {
+        boolean out = walks % 2 == 0;
+        gameState.updateAgentStatus(name, out ? "Delivering " + walks : "Going back " + walks);
+        gameState.moveAgent(name, out ? 15 - walks % 4 : homeX, out ? 4 + walks % 8 : homeY)
+                .thenRun(() -> walk(gameState, name, walks + 1, homeX, homeY));
+    }
+}
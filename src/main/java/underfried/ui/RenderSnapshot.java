@@ -0,0 +1,143 @@
+package underfried.ui;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import underfried.Restaurant;
+import underfried.StationResource;
+
+/**
+ * Everything GamePanel draws in one frame, copied from the GameState by the
+ * simulation loop.
+ *
+ * Snapshots are double-buffered: GameState owns two and reuses them, so the
+ * loop doesn't allocate a new one every tick. The loop fills the back buffer
+ * while the Event Dispatch Thread paints the front one, then swaps them. A
+ * buffer is never written while it is being painted, so painting never sees a
+ * half-updated kitchen, and a slow frame never holds up the simulation: if the
+ * panel is still painting the old front buffer, the loop skips publishing on
+ * that tick and the panel gets a newer snapshot on the next one.
+ */
+final class RenderSnapshot {
+
+    /**
+     * An agent's sprite
+     */
+    static final class Sprite {
+        String agentName;
+        Color color;
+        double x, y; // Position in tile coordinates
+        String status;
+
+        void set(String agentName, Color color, double x, double y, String status) {
+            this.agentName = agentName;
+            this.color = color;
+            this.x = x;
+            this.y = y;
+            this.status = status;
+        }
+    }
+
+    /**
+     * A station and how busy its slots were
+     */
+    static final class StationView {
+        Station station;
+        boolean hasResource; // False for plain furniture, the numbers below are 0
+        int inUse;
+        int capacity;
+        int queueLength;
+        long averageWaitMillis;
+
+        void set(Station station) {
+            this.station = station;
+            StationResource resource = station.getResource();
+            this.hasResource = resource != null;
+            this.inUse = resource == null ? 0 : resource.getInUse();
+            this.capacity = resource == null ? 0 : resource.getCapacity();
+            this.queueLength = resource == null ? 0 : resource.getQueueLength();
+            this.averageWaitMillis = resource == null ? 0 : resource.getAverageWaitMillis();
+        }
+
+        boolean isOccupied() {
+            return inUse > 0;
+        }
+    }
+
+    // Threads painting this buffer, see GameState.acquireSnapshot()
+    final AtomicInteger readers = new AtomicInteger();
+
+    // Pooled entries, only the first sprites.size() and stations.size() are
+    // current
+    private final List<Sprite> spritePool = new ArrayList<>();
+    private final List<StationView> stationPool = new ArrayList<>();
+    private final List<Sprite> spriteList = new ArrayList<>();
+    private final List<StationView> stationList = new ArrayList<>();
+    private final List<GameObject> objectList = new ArrayList<>();
+
+    long tick = -1; // Simulation loop tick the snapshot was taken on, -1 before the first
+    final List<Sprite> sprites = Collections.unmodifiableList(spriteList);
+    final List<StationView> stations = Collections.unmodifiableList(stationList);
+    final List<GameObject> objects = Collections.unmodifiableList(objectList);
+
+    // Footer
+    int cleanPlates;
+    int dirtyPlates;
+    int pendingOrders;
+    int readyDishes;
+    int fires;
+    int rats;
+    int burnedFood;
+    long moves; // Sprite moves that arrived, the travel summary changes with them
+    String travelSummary = "";
+
+    /**
+     * Start filling the buffer for a new tick
+     */
+    void clear(long tick) {
+        this.tick = tick;
+        spriteList.clear();
+        stationList.clear();
+        objectList.clear();
+    }
+
+    /**
+     * @return the next sprite entry, to be filled in by the caller
+     */
+    Sprite addSprite() {
+        if (spritePool.size() == spriteList.size()) {
+            spritePool.add(new Sprite());
+        }
+        Sprite sprite = spritePool.get(spriteList.size());
+        spriteList.add(sprite);
+        return sprite;
+    }
+
+    void addStation(Station station) {
+        if (stationPool.size() == stationList.size()) {
+            stationPool.add(new StationView());
+        }
+        StationView view = stationPool.get(stationList.size());
+        view.set(station);
+        stationList.add(view);
+    }
+
+    void addObject(GameObject object) {
+        objectList.add(object);
+    }
+
+    void setFooter(Restaurant restaurant, long moves, String travelSummary) {
+        this.cleanPlates = restaurant.getPlates().getClean();
+        this.dirtyPlates = restaurant.getPlates().getDirty();
+        this.pendingOrders = restaurant.getPendingOrderCount();
+        this.readyDishes = restaurant.getReadyDishCount();
+        this.fires = restaurant.getConditionCount(Restaurant.EnvironmentalCondition.FIRE);
+        this.rats = restaurant.getConditionCount(Restaurant.EnvironmentalCondition.RAT);
+        this.burnedFood = restaurant.getConditionCount(Restaurant.EnvironmentalCondition.BURNED_FOOD);
+        this.moves = moves;
+        this.travelSummary = travelSummary;
+    }
+}
@@ -0,0 +1,46 @@
+package underfried.ui;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.function.Consumer;
+
+/**
+ * A pre-rendered image of something that looks the same every frame, e.g. an
+ * agent's body or a status bubble of some width.
+ *
+ * Java2D allocates the outline of an antialiased shape every time it fills or
+ * strokes one, so shapes drawn every frame are drawn once into a stamp and
+ * blitted from then on, which allocates nothing.
+ */
+final class Stamp {
+    private final BufferedImage image;
+    private final int left, top; // Top-left corner of the image relative to where the stamp is placed
+
+    /**
+     * @param left    left edge of what the painter draws, relative to where the
+     *                stamp is placed
+     * @param top     top edge, relative to where the stamp is placed
+     * @param width   width of what the painter draws
+     * @param height  height of what the painter draws
+     * @param painter draws the stamp with (0, 0) at the point it is placed at
+     */
+    Stamp(int left, int top, int width, int height, Consumer<Graphics2D> painter) {
+        this.left = left;
+        this.top = top;
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+
+        Graphics2D g2d = image.createGraphics();
+        try {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2d.translate(-left, -top);
+            painter.accept(g2d);
+        } finally {
+            g2d.dispose();
+        }
+    }
+
+    void draw(Graphics2D g2d, int x, int y) {
+        g2d.drawImage(image, x + left, y + top, null);
+    }
+}
@@ -2,6 +2,8 @@ package underfried.ui;
 
 import java.awt.*;
 
+import underfried.StationResource;
+
 /**
  * Represents a station in the restaurant (cooking station, washing station,
  * etc.)
@@ -11,7 +13,11 @@ public class Station {
     private StationType type;
     private double x, y; // Position in tile coordinates
     private double width, height; // Size in tiles
-    private boolean occupied;
+    private StationResource resource; // Reservable slots, null for plain furniture
+
+    private static final Color SHADOW_COLOR = new Color(0, 0, 0, 30);
+    private static final Color OCCUPIED_COLOR = new Color(255, 200, 0, 150);
+    private static final Stroke BORDER = new BasicStroke(2);
 
     public enum StationType {
         COOKING_STATION(new Color(220, 100, 50)),
@@ -22,14 +28,20 @@ public class Station {
         TABLE(new Color(139, 90, 43));
 
         private final Color color;
+        private final Color borderColor;
 
         StationType(Color color) {
             this.color = color;
+            this.borderColor = color.darker();
         }
 
         public Color getColor() {
             return color;
         }
+
+        public Color getBorderColor() {
+            return borderColor;
+        }
     }
 
     public Station(String label, StationType type, double x, double y, double width, double height) {
@@ -39,17 +51,19 @@ public class Station {
         this.y = y;
         this.width = width;
         this.height = height;
-        this.occupied = false;
     }
 
-    public void draw(Graphics2D g2d, int tileSize) {
+    /**
+     * @param occupied whether any slot of the station is in use
+     */
+    public void draw(Graphics2D g2d, int tileSize, boolean occupied) {
         int pixelX = (int) (x * tileSize);
         int pixelY = (int) (y * tileSize);
         int pixelWidth = (int) (width * tileSize);
         int pixelHeight = (int) (height * tileSize);
 
         // Draw shadow
-        g2d.setColor(new Color(0, 0, 0, 30));
+        g2d.setColor(SHADOW_COLOR);
         g2d.fillRoundRect(pixelX + 3, pixelY + 3, pixelWidth, pixelHeight, 8, 8);
 
         // Draw station body
@@ -57,13 +71,13 @@ public class Station {
         g2d.fillRoundRect(pixelX, pixelY, pixelWidth, pixelHeight, 8, 8);
 
         // Draw border
-        g2d.setColor(type.getColor().darker());
-        g2d.setStroke(new BasicStroke(2));
+        g2d.setColor(type.getBorderColor());
+        g2d.setStroke(BORDER);
         g2d.drawRoundRect(pixelX, pixelY, pixelWidth, pixelHeight, 8, 8);
 
         // Draw occupied indicator
         if (occupied) {
-            g2d.setColor(new Color(255, 200, 0, 150));
+            g2d.setColor(OCCUPIED_COLOR);
             g2d.fillOval(pixelX + 5, pixelY + 5, 10, 10);
         }
     }
@@ -93,12 +107,12 @@ public class Station {
         return height;
     }
 
-    public boolean isOccupied() {
-        return occupied;
+    public StationResource getResource() {
+        return resource;
     }
 
-    public void setOccupied(boolean occupied) {
-        this.occupied = occupied;
+    public void setResource(StationResource resource) {
+        this.resource = resource;
     }
 
     public boolean contains(double px, double py) {
@@ -0,0 +1,69 @@
+package underfried.ui;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import underfried.IO;
+import underfried.Restaurant;
+import underfried.ui.AgentSprite.AgentType;
+
+/**
+ * Checks that sprites walk just as fast however slowly the game is updated and
+ * painted. A sprite walks back and forth between two points WALK_TILES apart,
+ * while the game state is ticked and a frame is painted offscreen at 60, 20
+ * and 5 frames per second, each frame taking a random 50% to 150% of its
+ * nominal time. Reports the simulated travel time against the ideal time at
+ * WALK_SPEED for each frame rate. Travel should stay close to ideal; what is
+ * left is arrival being noticed on the frame after it.
+ *
+ * Started with --travel-benchmark=WALKS instead of the simulation. Runs on the
+ * simulation clock, so a scaled clock (e.g. --clock=scaled:4) makes it quicker.
+ */
+public final class TravelBenchmark {
+    private static final int[] FRAME_RATES = { 60, 20, 5 };
+    private static final double WALK_TILES = 9;
+    private static final double START_X = 3, START_Y = 6;
+
+    private TravelBenchmark() {
+    }
+
+    /**
+     * Walk a sprite at every frame rate and print the results
+     *
+     * @param walks number of walks per frame rate
+     */
+    public static void run(Restaurant restaurant, int walks) {
+        Random jitter = new Random(1); // Same frame times on every run
+        for (int framesPerSecond : FRAME_RATES) {
+            GameState gameState = new GameState(restaurant);
+            gameState.addAgent("walker", "Walker", AgentType.WAITER, START_X, START_Y);
+            GamePanel panel = new GamePanel(gameState, framesPerSecond);
+            panel.stopGameLoop(); // We tick and paint ourselves
+            BufferedImage image = new BufferedImage(panel.getPreferredSize().width, panel.getPreferredSize().height,
+                    BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = image.createGraphics();
+            try {
+                long frames = 0;
+                for (int i = 0; i < walks; i++) {
+                    double x = i % 2 == 0 ? START_X + WALK_TILES : START_X;
+                    CompletableFuture<Void> arrived = gameState.moveAgent("walker", x, START_Y);
+                    while (!arrived.isDone()) {
+                        Thread.sleep((long) (1000.0 / framesPerSecond * (0.5 + jitter.nextDouble())));
+                        gameState.tick();
+                        panel.render(g2d);
+                        frames++;
+                    }
+                }
+                IO.println("System", "Travel benchmark at " + framesPerSecond + " fps: " + frames + " frames, "
+                        + gameState.getTravelSummary());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                g2d.dispose();
+            }
+        }
+    }
+}